@@ -0,0 +1,46 @@
+package benchmarks;
+
+/**
+ * A single measured operation. The runner calls setUp() before every
+ * iteration, run(i) once per operation inside the timed region and
+ * tearDown() after the iteration, so fixtures can be rebuilt without
+ * being counted in the results.
+ */
+public abstract class Benchmark {
+
+	private String name;
+
+	/**
+	 * Creates a benchmark with the given name.
+	 * @param name name used to identify the benchmark in the results.
+	 */
+	public Benchmark(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Prepares the state needed by the next iteration. Not timed.
+	 * @param ops number of operations that will be run in the iteration.
+	 */
+	public void setUp(int ops) {
+	}
+
+	/**
+	 * Executes the measured operation.
+	 * @param i index of the operation inside the current iteration.
+	 */
+	public abstract void run(int i);
+
+	/**
+	 * Releases the state created by the last iteration. Not timed.
+	 */
+	public void tearDown() {
+	}
+
+	/**
+	 * @return name of the benchmark.
+	 */
+	public String getName() {
+		return name;
+	}
+}
@@ -0,0 +1,96 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Runs benchmarks with warmup and measurement iterations and collects
+ * the nanoseconds per operation of each measured iteration. Results can
+ * be printed as a table or saved as CSV so they can be compared across
+ * releases.
+ */
+public class BenchmarkRunner {
+
+	private static final String HEADER = "benchmark,blockSize,capacity,param,iterations,"
+			+ "opsPerIteration,nsPerOpMean,nsPerOpMin,nsPerOpMedian,nsPerOpMax,opsPerSec";
+
+	private int warmupIterations;
+	private int measureIterations;
+	private ArrayList<String> results;
+
+	/**
+	 * Creates a runner with the given number of iterations.
+	 * @param warmupIterations iterations that are run but not recorded.
+	 * @param measureIterations iterations that are recorded.
+	 */
+	public BenchmarkRunner(int warmupIterations, int measureIterations) {
+		this.warmupIterations = warmupIterations;
+		this.measureIterations = measureIterations;
+		results = new ArrayList<String>();
+	}
+
+	/**
+	 * Runs a benchmark and records its result.
+	 * @param b benchmark to run.
+	 * @param ops number of operations per iteration.
+	 * @param blockSize block size of the disk the benchmark uses.
+	 * @param capacity capacity of the disk the benchmark uses.
+	 * @param param extra benchmark parameter, such as a file size.
+	 */
+	public void run(Benchmark b, int ops, int blockSize, int capacity, int param) {
+		for(int i = 0; i < warmupIterations; i++) {
+			this.iteration(b, ops);
+		}
+
+		double[] nsPerOp = new double[measureIterations];
+		for(int i = 0; i < measureIterations; i++) {
+			nsPerOp[i] = (double) this.iteration(b, ops) / ops;
+		}
+		Arrays.sort(nsPerOp);
+
+		double sum = 0;
+		for(double d : nsPerOp) {
+			sum += d;
+		}
+		double mean = sum / nsPerOp.length;
+		String line = String.format(Locale.ROOT, "%s,%d,%d,%d,%d,%d,%.1f,%.1f,%.1f,%.1f,%.1f",
+				b.getName(), blockSize, capacity, param, measureIterations, ops, mean,
+				nsPerOp[0], nsPerOp[nsPerOp.length/2], nsPerOp[nsPerOp.length - 1],
+				1e9 / mean);
+		results.add(line);
+		System.out.println(String.format("%-24s bs=%-5d cap=%-6d param=%-6d %12.1f ns/op",
+				b.getName(), blockSize, capacity, param, mean));
+	}
+
+	/**
+	 * Runs a single iteration of the benchmark.
+	 * @return elapsed nanoseconds of the timed region.
+	 */
+	private long iteration(Benchmark b, int ops) {
+		b.setUp(ops);
+		long start = System.nanoTime();
+		for(int i = 0; i < ops; i++) {
+			b.run(i);
+		}
+		long elapsed = System.nanoTime() - start;
+		b.tearDown();
+		return elapsed;
+	}
+
+	/**
+	 * Saves all recorded results as CSV.
+	 * @param path file where the results will be written.
+	 * @throws IOException when the file can't be written.
+	 */
+	public void saveResults(String path) throws IOException {
+		PrintWriter out = new PrintWriter(path, "UTF-8");
+		out.println(HEADER);
+		for(String line : results) {
+			out.println(line);
+		}
+		out.close();
+	}
+}
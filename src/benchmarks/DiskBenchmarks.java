@@ -0,0 +1,307 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import diskUtilities.DataFile;
+import diskUtilities.Directory;
+import diskUtilities.DiskUnit;
+import diskUtilities.INode;
+import diskUtilities.VirtualDiskBlock;
+
+/**
+ * Measures the disk, allocator, file and directory layers on scratch
+ * disks of different block sizes and capacities. Results are printed
+ * and saved as CSV.
+ *
+ * Usage: DiskBenchmarks [-bs 64,256,1024] [-cap 1024,4096] [-warmup 2]
+ * 	[-iter 5] [-out bench_results.csv]
+ */
+public class DiskBenchmarks {
+
+	private static final String FILEPATH = "DiskUnits/";
+	private static final int BLOCK_POOL = 64;
+
+	private DiskUnit disk;
+	private int bSize;
+	private int capacity;
+	private BenchmarkRunner runner;
+
+	public static void main(String[] args) throws IOException {
+		int[] blockSizes = {64, 256, 1024};
+		int[] capacities = {1024, 4096};
+		int warmup = 2;
+		int iterations = 5;
+		String out = "bench_results.csv";
+
+		for(int i = 0; i + 1 < args.length; i += 2) {
+			if(args[i].equals("-bs"))
+				blockSizes = parseList(args[i + 1]);
+			else if(args[i].equals("-cap"))
+				capacities = parseList(args[i + 1]);
+			else if(args[i].equals("-warmup"))
+				warmup = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-iter"))
+				iterations = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-out"))
+				out = args[i + 1];
+		}
+
+		new File("DiskUnits").mkdir();
+		BenchmarkRunner runner = new BenchmarkRunner(warmup, iterations);
+		for(int bs : blockSizes) {
+			for(int cap : capacities) {
+				new DiskBenchmarks(runner, bs, cap).runAll();
+			}
+		}
+		runner.saveResults(out);
+		System.out.println("Results saved to " + out);
+	}
+
+	/**
+	 * Parses a comma separated list of integers.
+	 */
+	private static int[] parseList(String s) {
+		String[] parts = s.split(",");
+		int[] values = new int[parts.length];
+		for(int i = 0; i < parts.length; i++) {
+			values[i] = Integer.parseInt(parts[i].trim());
+		}
+		return values;
+	}
+
+	private DiskBenchmarks(BenchmarkRunner runner, int bSize, int capacity) {
+		this.runner = runner;
+		this.bSize = bSize;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Creates a scratch disk, runs every benchmark on it and deletes it.
+	 */
+	private void runAll() {
+		String name = "bench" + bSize + "x" + capacity;
+		if(new File(FILEPATH + name).exists())
+			DiskUnit.deleteDisk(name);
+		DiskUnit.createDiskUnit(name, capacity, bSize);
+		disk = DiskUnit.mount(name);
+
+		try {
+			this.blockBenchmarks();
+			this.allocatorBenchmarks();
+			this.iNodeBenchmarks();
+			int[] fileSizes = {bSize/2, 8 * bSize, 64 * bSize};
+			for(int size : fileSizes) {
+				if(size / bSize + 4 < capacity / 4)
+					this.fileBenchmarks(size);
+			}
+			this.directoryBenchmarks(32);
+		} finally {
+			disk.shutdown();
+			DiskUnit.deleteDisk(name);
+		}
+	}
+
+	private void blockBenchmarks() {
+		final int[] pool = new int[BLOCK_POOL];
+		for(int i = 0; i < pool.length; i++) {
+			pool[i] = disk.getFreeBN();
+		}
+		final VirtualDiskBlock vdb = new VirtualDiskBlock(bSize);
+
+		runner.run(new Benchmark("DiskUnit.write") {
+			public void run(int i) {
+				disk.write(pool[i % pool.length], vdb);
+			}
+		}, 256, bSize, capacity, 0);
+
+		runner.run(new Benchmark("DiskUnit.read") {
+			public void run(int i) {
+				disk.read(pool[i % pool.length], vdb);
+			}
+		}, 256, bSize, capacity, 0);
+
+		for(int i = pool.length - 1; i >= 0; i--) {
+			disk.registerFB(pool[i]);
+		}
+	}
+
+	private void allocatorBenchmarks() {
+		final int[] blocks = new int[Math.min(256, capacity / 2)];
+
+		runner.run(new Benchmark("DiskUnit.getFreeBN") {
+			public void run(int i) {
+				blocks[i] = disk.getFreeBN();
+			}
+			public void tearDown() {
+				for(int i = blocks.length - 1; i >= 0; i--) {
+					disk.registerFB(blocks[i]);
+				}
+			}
+		}, blocks.length, bSize, capacity, 0);
+
+		runner.run(new Benchmark("DiskUnit.registerFB") {
+			public void setUp(int ops) {
+				for(int i = 0; i < ops; i++) {
+					blocks[i] = disk.getFreeBN();
+				}
+			}
+			public void run(int i) {
+				disk.registerFB(blocks[blocks.length - 1 - i]);
+			}
+		}, blocks.length, bSize, capacity, 0);
+	}
+
+	private void iNodeBenchmarks() {
+		final int nodes = disk.getNumOfINodes();
+		final INode[] read = new INode[Math.min(256, nodes)];
+
+		runner.run(new Benchmark("DiskUnit.getINode") {
+			public void run(int i) {
+				read[i] = disk.getINode(i % nodes);
+			}
+		}, read.length, bSize, capacity, 0);
+
+		runner.run(new Benchmark("DiskUnit.saveINode") {
+			public void run(int i) {
+				disk.saveINode(read[i]);
+			}
+		}, read.length, bSize, capacity, 0);
+	}
+
+	/**
+	 * @param size number of bytes of each file used by the benchmarks.
+	 */
+	private void fileBenchmarks(int size) {
+		final String data = makeString(size);
+		final String chunk = makeString(bSize);
+		int ops = Math.max(1, Math.min(16, (capacity / 2) / (size / bSize + 4)));
+		final DataFile[] files = new DataFile[ops];
+
+		runner.run(new Benchmark("DataFile.createFile") {
+			public void run(int i) {
+				files[i] = new DataFile(disk);
+				files[i].createFile(data);
+			}
+			public void tearDown() {
+				for(DataFile f : files) {
+					f.deleteFile();
+				}
+			}
+		}, ops, bSize, capacity, size);
+
+		final DataFile[] single = new DataFile[1];
+		runner.run(new Benchmark("DataFile.readFile") {
+			public void setUp(int ops) {
+				single[0] = new DataFile(disk);
+				single[0].createFile(data);
+			}
+			public void run(int i) {
+				single[0].readFile();
+			}
+			public void tearDown() {
+				single[0].deleteFile();
+			}
+		}, ops, bSize, capacity, size);
+
+		final byte[] record = makeString(16).getBytes();
+		runner.run(new Benchmark("DataFile.write") {
+			public void setUp(int ops) {
+				single[0] = new DataFile(disk);
+				single[0].createFile(data);
+			}
+			public void run(int i) {
+				single[0].write((i * 7919L) % (size - record.length + 1), record, 0, record.length);
+			}
+			public void tearDown() {
+				single[0].deleteFile();
+			}
+		}, ops, bSize, capacity, size);
+
+		runner.run(new Benchmark("DataFile.appendFile") {
+			public void setUp(int ops) {
+				single[0] = new DataFile(disk);
+				single[0].createFile(data);
+			}
+			public void run(int i) {
+				single[0].appendFile(chunk);
+			}
+			public void tearDown() {
+				single[0].deleteFile();
+			}
+		}, Math.min(ops, 8), bSize, capacity, size);
+	}
+
+	/**
+	 * @param entries number of entries used by the lookup and remove benchmarks.
+	 */
+	private void directoryBenchmarks(final int entries) {
+		final Directory dir = new Directory(disk);
+		dir.createDir("bench");
+		final int node = dir.getDirNode().getNodeIndex();
+
+		runner.run(new Benchmark("Directory.addFile") {
+			public void run(int i) {
+				dir.addFile(entryName(i), node);
+			}
+			public void tearDown() {
+				removeEntries(dir, entries);
+			}
+		}, entries, bSize, capacity, entries);
+
+		runner.run(new Benchmark("Directory.getFileNode") {
+			public void setUp(int ops) {
+				for(int i = 0; i < entries; i++) {
+					dir.addFile(entryName(i), node);
+				}
+			}
+			public void run(int i) {
+				dir.getFileNode(entryName(i % entries));
+			}
+			public void tearDown() {
+				removeEntries(dir, entries);
+			}
+		}, entries, bSize, capacity, entries);
+
+		runner.run(new Benchmark("Directory.removeFile") {
+			public void setUp(int ops) {
+				for(int i = 0; i < ops; i++) {
+					dir.addFile(entryName(i), node);
+				}
+			}
+			public void run(int i) {
+				try {
+					dir.removeFile(entryName(i));
+				} catch (FileNotFoundException e) {
+					throw new IllegalStateException(e.getMessage());
+				}
+			}
+		}, entries, bSize, capacity, entries);
+	}
+
+	private static void removeEntries(Directory dir, int entries) {
+		for(int i = 0; i < entries; i++) {
+			try {
+				dir.removeFile(entryName(i));
+			} catch (FileNotFoundException e) {
+				throw new IllegalStateException(e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * @return fixed width entry name so that no name is a prefix of another.
+	 */
+	private static String entryName(int i) {
+		return String.format("f%04d", i);
+	}
+
+	private static String makeString(int length) {
+		StringBuilder sb = new StringBuilder(length);
+		for(int i = 0; i < length; i++) {
+			sb.append((char) ('a' + i % 26));
+		}
+		return sb.toString();
+	}
+}
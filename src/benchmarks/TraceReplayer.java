@@ -0,0 +1,188 @@
+package benchmarks;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import systemGeneralClasses.Command;
+import systemGeneralClasses.CommandLine;
+import systemGeneralClasses.CommandValidator;
+import systemGeneralClasses.ErrMsg;
+import systemGeneralClasses.FixedLengthCommand;
+import systemGeneralClasses.FixedLengthCommandValidator;
+import systemGeneralClasses.SystemCommand;
+import systemGeneralClasses.VariableLengthCommand;
+import systemGeneralClasses.VariableLengthCommandValidator;
+import theSystem.SystemCommandsProcessor;
+
+/**
+ * Replays a command trace against SystemCommandsProcessor and reports the
+ * throughput and latency percentiles of each command type. Traces can be
+ * generated by WorkloadGenerator or recorded from real sessions; blank
+ * lines and lines starting with '#' are ignored.
+ *
+ * Usage: TraceReplayer trace.txt [-csv results.csv] [-v]
+ */
+public class TraceReplayer {
+
+	private static final String HEADER =
+			"command,count,totalMs,opsPerSec,p50Us,p90Us,p99Us,maxUs";
+
+	private SystemCommandsProcessor sys;
+	private LinkedHashMap<String, ArrayList<Long>> latencies;
+	private int invalid;
+	private boolean verbose;
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1) {
+			System.out.println("Usage: TraceReplayer trace.txt [-csv results.csv] [-v]");
+			return;
+		}
+		String csv = null;
+		boolean verbose = false;
+		for(int i = 1; i < args.length; i++) {
+			if(args[i].equals("-csv") && i + 1 < args.length)
+				csv = args[++i];
+			else if(args[i].equals("-v"))
+				verbose = true;
+		}
+
+		TraceReplayer replayer = new TraceReplayer(verbose);
+		long start = System.nanoTime();
+		int ops = replayer.replay(args[0]);
+		long elapsed = System.nanoTime() - start;
+
+		System.out.println(String.format(Locale.ROOT, "%d commands in %.1f ms (%.1f ops/sec), %d invalid",
+				ops, elapsed / 1e6, ops / (elapsed / 1e9), replayer.invalid));
+		replayer.report(csv);
+	}
+
+	/**
+	 * Creates a replayer with a fresh command processor.
+	 * @param verbose whether the output of every command is printed.
+	 */
+	public TraceReplayer(boolean verbose) {
+		sys = new SystemCommandsProcessor();
+		latencies = new LinkedHashMap<String, ArrayList<Long>>();
+		this.verbose = verbose;
+		invalid = 0;
+	}
+
+	/**
+	 * Executes every command of the trace.
+	 * @param path trace file.
+	 * @return number of commands that were executed.
+	 */
+	public int replay(String path) throws IOException {
+		BufferedReader in = new BufferedReader(new FileReader(path));
+		int ops = 0;
+		String line;
+		while((line = in.readLine()) != null && !sys.inShutdownMode()) {
+			line = line.trim();
+			if(line.isEmpty() || line.startsWith("#"))
+				continue;
+			if(this.execute(line))
+				ops++;
+		}
+		in.close();
+		return ops;
+	}
+
+	/**
+	 * Validates and executes a single command, recording its latency.
+	 * @return true if the command was valid and executed.
+	 */
+	public boolean execute(String line) {
+		CommandLine cLine = new CommandLine(line);
+		ErrMsg errMsg = new ErrMsg();
+		sys.preProcessCommand(cLine, errMsg);
+		if(cLine.getSc() == null) {
+			invalid++;
+			if(verbose)
+				System.out.println(line + ": " + errMsg.getMessage());
+			return false;
+		}
+
+		SystemCommand sc = cLine.getSc();
+		Command cmd = makeCommand(cLine);
+		long start = System.nanoTime();
+		ArrayList<String> output = sys.executeCommand(sc, cmd);
+		long elapsed = System.nanoTime() - start;
+
+		ArrayList<Long> list = latencies.get(sc.getName());
+		if(list == null) {
+			list = new ArrayList<Long>();
+			latencies.put(sc.getName(), list);
+		}
+		list.add(elapsed);
+
+		if(verbose && output != null) {
+			System.out.println("> " + line);
+			for(String s : output) {
+				System.out.println(s);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Prints the per command report and optionally saves it as CSV.
+	 * @param csv file for the CSV report or null.
+	 */
+	public void report(String csv) throws IOException {
+		PrintWriter out = null;
+		if(csv != null) {
+			out = new PrintWriter(csv, "UTF-8");
+			out.println(HEADER);
+		}
+		System.out.println(String.format("%-12s %8s %12s %10s %10s %10s %10s",
+				"command", "count", "ops/sec", "p50(us)", "p90(us)", "p99(us)", "max(us)"));
+		for(Map.Entry<String, ArrayList<Long>> e : latencies.entrySet()) {
+			ArrayList<Long> list = e.getValue();
+			Collections.sort(list);
+			long total = 0;
+			for(long l : list) {
+				total += l;
+			}
+			double opsPerSec = list.size() / (total / 1e9);
+			System.out.println(String.format(Locale.ROOT, "%-12s %8d %12.1f %10.1f %10.1f %10.1f %10.1f",
+					e.getKey(), list.size(), opsPerSec, percentile(list, 50) / 1e3,
+					percentile(list, 90) / 1e3, percentile(list, 99) / 1e3,
+					list.get(list.size() - 1) / 1e3));
+			if(out != null)
+				out.println(String.format(Locale.ROOT, "%s,%d,%.3f,%.1f,%.1f,%.1f,%.1f,%.1f",
+						e.getKey(), list.size(), total / 1e6, opsPerSec,
+						percentile(list, 50) / 1e3, percentile(list, 90) / 1e3,
+						percentile(list, 99) / 1e3, list.get(list.size() - 1) / 1e3));
+		}
+		if(out != null)
+			out.close();
+	}
+
+	/**
+	 * @param sorted latencies in ascending order.
+	 * @param p percentile between 0 and 100.
+	 * @return the nearest-rank percentile of the list.
+	 */
+	private static long percentile(ArrayList<Long> sorted, int p) {
+		int rank = (int) Math.ceil(p / 100.0 * sorted.size());
+		return sorted.get(Math.max(0, rank - 1));
+	}
+
+	/**
+	 * Builds the command object the same way SystemController does.
+	 */
+	private static Command makeCommand(CommandLine cLine) {
+		CommandValidator cv = cLine.getSc().getCommandValidator();
+		if(cv instanceof FixedLengthCommandValidator)
+			return new FixedLengthCommand(cLine);
+		VariableLengthCommandValidator scv = (VariableLengthCommandValidator) cv;
+		return new VariableLengthCommand(scv.getLastItemsLists());
+	}
+}
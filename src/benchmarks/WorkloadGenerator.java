@@ -0,0 +1,249 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Generates synthetic command traces for TraceReplayer. A trace is a
+ * plain text file with one command per line, written exactly as it would
+ * be typed in the command system. The generator keeps a model of the
+ * directory tree so every command it emits refers to files and folders
+ * that exist at that point of the trace. The host files used by loadfile
+ * and append are written next to the trace.
+ *
+ * Usage: WorkloadGenerator [-out trace.txt] [-ops 1000] [-depth 3]
+ * 	[-seed 1] [-disk wldisk] [-nblocks 4096] [-bsize 256]
+ * 	[-mix mkdir=10,loadfile=25,cat=20,append=10,cp=10,rm=10,find=5,drmdir=2,cd=8]
+ * 	[-sizes 100=50,1000=35,10000=15]
+ */
+public class WorkloadGenerator {
+
+	private static final String[] COMMANDS =
+		{"mkdir", "loadfile", "cat", "append", "cp", "rm", "find", "drmdir", "cd"};
+	private static final int[] DEFAULT_MIX = {10, 25, 20, 10, 10, 10, 5, 2, 8};
+
+	private Random random;
+	private int[] mix;
+	private int[] sizes;
+	private int[] sizeWeights;
+	private int maxDepth;
+	private int nextName;
+	private DirModel root;
+	private DirModel current;
+	private int depth;
+
+	public static void main(String[] args) throws IOException {
+		String out = "trace.txt";
+		int ops = 1000;
+		int maxDepth = 3;
+		long seed = 1;
+		String disk = "wldisk";
+		int nblocks = 4096;
+		int bsize = 256;
+		String mix = null;
+		String sizes = "100=50,1000=35,10000=15";
+
+		for(int i = 0; i + 1 < args.length; i += 2) {
+			if(args[i].equals("-out"))
+				out = args[i + 1];
+			else if(args[i].equals("-ops"))
+				ops = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-depth"))
+				maxDepth = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-seed"))
+				seed = Long.parseLong(args[i + 1]);
+			else if(args[i].equals("-disk"))
+				disk = args[i + 1];
+			else if(args[i].equals("-nblocks"))
+				nblocks = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-bsize"))
+				bsize = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-mix"))
+				mix = args[i + 1];
+			else if(args[i].equals("-sizes"))
+				sizes = args[i + 1];
+		}
+
+		WorkloadGenerator gen = new WorkloadGenerator(seed, maxDepth);
+		if(mix != null)
+			gen.parseMix(mix);
+		gen.parseSizes(sizes);
+		gen.writeHostFiles();
+
+		PrintWriter trace = new PrintWriter(out, "UTF-8");
+		trace.println("# ops=" + ops + " depth=" + maxDepth + " seed=" + seed);
+		trace.println("createdisk " + disk + " " + nblocks + " " + bsize);
+		trace.println("mount " + disk);
+		for(int i = 0; i < ops; i++) {
+			trace.println(gen.nextCommand());
+		}
+		trace.println("unmount");
+		trace.println("deletedisk " + disk);
+		trace.close();
+		System.out.println("Trace with " + ops + " operations saved to " + out);
+	}
+
+	/**
+	 * Creates a generator with the default command mix.
+	 * @param seed seed of the random generator, so traces can be reproduced.
+	 * @param maxDepth maximum depth of the generated directory tree.
+	 */
+	public WorkloadGenerator(long seed, int maxDepth) {
+		random = new Random(seed);
+		mix = DEFAULT_MIX.clone();
+		this.maxDepth = maxDepth;
+		root = new DirModel(null, null);
+		current = root;
+		depth = 0;
+		nextName = 0;
+	}
+
+	/**
+	 * Sets the weight of each command from a list such as "mkdir=10,cat=5".
+	 * Commands that are not listed get weight 0.
+	 */
+	public void parseMix(String s) {
+		mix = new int[COMMANDS.length];
+		for(String part : s.split(",")) {
+			String[] kv = part.split("=");
+			for(int i = 0; i < COMMANDS.length; i++) {
+				if(COMMANDS[i].equals(kv[0].trim()))
+					mix[i] = Integer.parseInt(kv[1].trim());
+			}
+		}
+	}
+
+	/**
+	 * Sets the file size distribution from a list of size=weight pairs
+	 * such as "100=50,10000=50".
+	 */
+	public void parseSizes(String s) {
+		String[] parts = s.split(",");
+		sizes = new int[parts.length];
+		sizeWeights = new int[parts.length];
+		for(int i = 0; i < parts.length; i++) {
+			String[] kv = parts[i].split("=");
+			sizes[i] = Integer.parseInt(kv[0].trim());
+			sizeWeights[i] = kv.length > 1 ? Integer.parseInt(kv[1].trim()) : 1;
+		}
+	}
+
+	/**
+	 * Writes one host file per size of the distribution.
+	 */
+	public void writeHostFiles() throws IOException {
+		for(int size : sizes) {
+			PrintWriter out = new PrintWriter(hostFile(size), "ISO-8859-1");
+			for(int i = 0; i < size; i++) {
+				out.print((char) ('a' + random.nextInt(26)));
+			}
+			out.close();
+		}
+	}
+
+	/**
+	 * @return the next command of the trace.
+	 */
+	public String nextCommand() {
+		String cmd = COMMANDS[pick(mix)];
+
+		if(cmd.equals("cd")) {
+			if(depth > 0 && (depth >= maxDepth || current.dirs.isEmpty() || random.nextBoolean())) {
+				current = current.parent;
+				depth--;
+				return "cd ..";
+			}
+			if(!current.dirs.isEmpty()) {
+				current = current.dirs.get(random.nextInt(current.dirs.size()));
+				depth++;
+				return "cd " + current.name;
+			}
+			cmd = "mkdir";
+		}
+		if(cmd.equals("drmdir")) {
+			if(!current.dirs.isEmpty())
+				return "drmdir " + current.dirs.remove(random.nextInt(current.dirs.size())).name;
+			cmd = "mkdir";
+		}
+		if(cmd.equals("mkdir")) {
+			if(depth < maxDepth) {
+				DirModel dir = new DirModel(newName("d"), current);
+				current.dirs.add(dir);
+				return "mkdir " + dir.name;
+			}
+			cmd = "loadfile";
+		}
+		if(current.files.isEmpty() && !cmd.equals("find"))
+			cmd = "loadfile";
+
+		if(cmd.equals("loadfile")) {
+			String name = newName("f");
+			current.files.add(name);
+			return "loadfile " + hostFile(sizes[pick(sizeWeights)]) + " " + name;
+		}
+		String file = current.files.isEmpty() ? newName("f")
+				: current.files.get(random.nextInt(current.files.size()));
+		if(cmd.equals("cat"))
+			return "cat " + file;
+		if(cmd.equals("append"))
+			return "append " + hostFile(sizes[pick(sizeWeights)]) + " " + file;
+		if(cmd.equals("cp")) {
+			String name = newName("f");
+			current.files.add(name);
+			return "cp " + file + " " + name;
+		}
+		if(cmd.equals("rm")) {
+			current.files.remove(file);
+			return "rm " + file;
+		}
+		return "find " + file;
+	}
+
+	/**
+	 * @return index chosen at random proportionally to the given weights.
+	 */
+	private int pick(int[] weights) {
+		int total = 0;
+		for(int w : weights) {
+			total += w;
+		}
+		int r = random.nextInt(Math.max(1, total));
+		for(int i = 0; i < weights.length; i++) {
+			r -= weights[i];
+			if(r < 0)
+				return i;
+		}
+		return 0;
+	}
+
+	/**
+	 * @return a new name. Names have a fixed width so that no name is a
+	 * 	prefix of another one.
+	 */
+	private String newName(String prefix) {
+		return String.format("%s%05d", prefix, nextName++);
+	}
+
+	private static String hostFile(int size) {
+		return "wl" + size;
+	}
+
+	/**
+	 * Model of a folder of the generated tree.
+	 */
+	private class DirModel {
+		private String name;
+		private DirModel parent;
+		private ArrayList<String> files;
+		private ArrayList<DirModel> dirs;
+
+		private DirModel(String name, DirModel parent) {
+			this.name = name;
+			this.parent = parent;
+			files = new ArrayList<String>();
+			dirs = new ArrayList<DirModel>();
+		}
+	}
+}
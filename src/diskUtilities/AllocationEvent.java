@@ -0,0 +1,63 @@
+package diskUtilities;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for taking a block from, or returning a block
+ * to, the free block list of a DiskUnit. Disabled by default; enable it
+ * in the recording settings.
+ */
+@Name("fileSystem.Allocation")
+@Label("Block Allocation")
+@Description("Allocation or release of a free block")
+@Category({"File System", "Disk"})
+@Enabled(false)
+@StackTrace(false)
+class AllocationEvent extends Event {
+
+	@Label("Disk")
+	String disk;
+
+	@Label("Block Number")
+	int blockNumber;
+
+	@Label("Blocks")
+	int blocks;
+
+	@Label("Operation")
+	String operation;
+
+	/**
+	 * Ends the event and commits it if it is enabled.
+	 * @param disk name of the disk.
+	 * @param blockNumber number of the block allocated or released.
+	 * @param operation "alloc" or "free".
+	 */
+	void finish(String disk, int blockNumber, String operation) {
+		this.finish(disk, blockNumber, 1, operation);
+	}
+
+	/**
+	 * Ends the event and commits it if it is enabled.
+	 * @param disk name of the disk.
+	 * @param blockNumber number of the first block allocated or released.
+	 * @param blocks number of blocks allocated or released.
+	 * @param operation "alloc" or "free".
+	 */
+	void finish(String disk, int blockNumber, int blocks, String operation) {
+		end();
+		if(shouldCommit()) {
+			this.disk = disk;
+			this.blockNumber = blockNumber;
+			this.blocks = blocks;
+			this.operation = operation;
+			commit();
+		}
+	}
+}
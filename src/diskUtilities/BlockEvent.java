@@ -0,0 +1,53 @@
+package diskUtilities;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for a block read or write of a DiskUnit, or for
+ * a ranged transfer of consecutive blocks.
+ * Disabled by default; enable it in the recording settings.
+ */
+@Name("fileSystem.Block")
+@Label("Block I/O")
+@Description("Read or write of a run of disk blocks")
+@Category({"File System", "Disk"})
+@Enabled(false)
+@StackTrace(false)
+class BlockEvent extends Event {
+
+	@Label("Disk")
+	String disk;
+
+	@Label("Block Number")
+	int blockNumber;
+
+	@Label("Blocks")
+	int blocks;
+
+	@Label("Operation")
+	String operation;
+
+	/**
+	 * Ends the event and commits it if it is enabled.
+	 * @param disk name of the disk.
+	 * @param blockNumber number of the first block read or written.
+	 * @param blocks number of blocks transferred.
+	 * @param operation "read" or "write".
+	 */
+	void finish(String disk, int blockNumber, int blocks, String operation) {
+		end();
+		if(shouldCommit()) {
+			this.disk = disk;
+			this.blockNumber = blockNumber;
+			this.blocks = blocks;
+			this.operation = operation;
+			commit();
+		}
+	}
+}
@@ -1,18 +1,33 @@
 package diskUtilities;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidParameterException;
+import java.util.Arrays;
+import exceptions.FullDiskException;
 
 /**
  * Object to represent a data or text file inside a DiskUnit object.
+ * Files are either indexed, with data in the root block followed by 
+ * direct, one-level and two-level indexes, or extent-based, mapped by
+ * an ExtentMap. New files use the format set in the disk.
  * @author jeano
  *
  */
 public class DataFile {
 	
+	private static final int MIN_TRANSFER = 1 << 16;	// shortest run sent with transferTo
+	private static final int BUFFER_SIZE = 1 << 20;		// direct buffer for shorter pieces
+	
 	private DiskUnit disk;
 	private int bSize;
 	private int rootBlock;
 	private INode fileNode;
+	private ExtentMap extents;
+	private int[] blockMap;			// disk block of each data block of an indexed file
+	private int mapSize;
 
 	/**
 	 * Creates an empty or uninitialized DataFile object.
@@ -38,24 +53,48 @@ public class DataFile {
 	}
 	
 	/**
-	 * Creates a text or data file in the current disk.
+	 * Creates a text or data file in the current disk. The blocks and the
+	 * 	I-Node of the file are reserved first, so a disk without room for
+	 * 	it is left as it was.
 	 * @param string data that will be written into the file.
 	 * @throws InvalidParameterException whenever the string is null or
 	 * 	when the string is too large to be stored in a single file.
+	 * @throws FullDiskException whenever the disk doesn't have room for
+	 * 	the file.
 	 */
-	public void createFile(String string) throws InvalidParameterException {
+	public void createFile(String string) throws InvalidParameterException, FullDiskException {
 		if(string == null)
 			throw new InvalidParameterException("String is null.");
-		if(string.length() > (bSize - 20) + (3 * bSize + 
-				(bSize/4) * bSize) + ((bSize/4) * bSize)*(bSize/4))
-			throw new InvalidParameterException("File is too large.");
-		
+		Reservation reservation = disk.reserve(this.getBlocksNeeded(string.length()), 1);
+		try {
+			if(disk.usesExtents())
+				this.createExtentFile(string);
+			else
+				this.createIndexedFile(string);
+		} catch (RuntimeException e) {
+			reservation.cancel();
+			fileNode = null;
+			rootBlock = 0;
+			extents = null;
+			blockMap = null;
+			throw e;
+		}
+		reservation.release();
+	}
+	
+	/**
+	 * Creates a file indexed by the pointers of its root block.
+	 * @param string data that will be written into the file.
+	 */
+	private void createIndexedFile(String string) {
 		//Set up root block and I-Node for file
 		fileNode = disk.getFirstFreeINode();
 		rootBlock = disk.getFreeBN();
+		blockMap = null;
 		fileNode.setBlockIndex(rootBlock);
 		fileNode.setSize(string.length()/bSize + 1);
 		fileNode.setType((byte) 0);
+		fileNode.setLength(string.length());
 		disk.saveINode(fileNode);
 		
 		//Initialize indexes of root block as 0
@@ -140,9 +179,17 @@ public class DataFile {
 		if (rootBlock == 0)
 			throw new InvalidParameterException("A file must be accessed first.");
 		
+		//Write in place after the last byte when the length is known
+		long length = this.getLength();
+		if(length >= 0) {
+			byte[] data = string.getBytes(StandardCharsets.ISO_8859_1);
+			this.write(length, data, 0, data.length);
+			return;
+		}
+		
 		String newString = this.readFile();
 		newString += string;
-		if(newString.length() > (bSize - 20) + (3 * bSize + 
+		if(!disk.usesExtents() && newString.length() > (bSize - 20) + (3 * bSize + 
 				(bSize/4) * bSize) + ((bSize/4) * bSize)*(bSize/4))
 			throw new InvalidParameterException("File is too large");
 		
@@ -175,6 +222,12 @@ public class DataFile {
 	public void deleteFile() throws IllegalStateException {
 		if (rootBlock == 0)
 			throw new IllegalStateException("A file must be accessed first.");
+		if(this.isExtentFile()) {
+			this.getExtentMap().delete();
+			extents = null;
+			disk.setFirstFreeINode(fileNode);
+			return;
+		}
 		
 		VirtualDiskBlock root = new VirtualDiskBlock(bSize);	
 		disk.read(rootBlock, root);
@@ -207,7 +260,43 @@ public class DataFile {
 		disk.setFirstFreeINode(fileNode);
 		disk.write(rootBlock, vdb);
 		disk.registerFB(rootBlock);
+		blockMap = null;
+		
+	}
+	
+	/**
+	 * Lists every block the current file uses, so they can be freed 
+	 * 	together. Only the maps of the file are read.
+	 * @return data blocks, index blocks or extent leaves, and the root 
+	 * 	block last.
+	 * @throws IllegalStateException whenever the method is called 
+	 * 	without initializing a file first.
+	 */
+	public int[] getAllBlocks() throws IllegalStateException {
+		if (rootBlock == 0)
+			throw new IllegalStateException("A file must be accessed first.");
+		if(this.isExtentFile())
+			return this.getExtentMap().getAllBlocks();
 		
+		int[] map = this.getBlockMap();
+		int[] blocks = Arrays.copyOf(map, mapSize + bSize/4 + 3);
+		int n = mapSize;
+		VirtualDiskBlock root = new VirtualDiskBlock(bSize);
+		disk.read(rootBlock, root);
+		int oneLevel = Utils.getIntFromBlock(root, bSize - 8);
+		if(oneLevel != 0)
+			blocks[n++] = oneLevel;
+		int twoLevel = Utils.getIntFromBlock(root, bSize - 4);
+		if(twoLevel != 0) {
+			VirtualDiskBlock vdb = new VirtualDiskBlock(bSize);
+			disk.read(twoLevel, vdb);
+			for(int i = 0; i < bSize && Utils.getIntFromBlock(vdb, i) != 0; i += 4) {
+				blocks[n++] = Utils.getIntFromBlock(vdb, i);
+			}
+			blocks[n++] = twoLevel;
+		}
+		blocks[n++] = rootBlock;
+		return Arrays.copyOf(blocks, n);
 	}
 	
 	/**
@@ -219,37 +308,742 @@ public class DataFile {
 	public String readFile() throws IllegalStateException {
 		if (rootBlock == 0)
 			throw new IllegalStateException("A file must be accessed first.");
+		if(this.isExtentFile())
+			return this.readExtentFile();
 		
-		VirtualDiskBlock root = new VirtualDiskBlock(bSize);	
-		disk.read(rootBlock, root);
-		int i = bSize - 20;
+		//Data blocks are found through the block map, so index blocks
+		//are read only once.
+		int[] map = this.getBlockMap();
+		byte[] data = new byte[(bSize - 20) + mapSize * bSize];
+		VirtualDiskBlock vdb = new VirtualDiskBlock(bSize);	
+		disk.read(rootBlock, vdb);
+		for(int i = 0; i < bSize - 20; i++) {
+			data[i] = vdb.getElement(i);
+		}
+		for(int k = 0; k < mapSize; k++) {
+			disk.read(map[k], vdb);
+			for(int i = 0; i < bSize; i++) {
+				data[(bSize - 20) + k * bSize + i] = vdb.getElement(i);
+			}
+		}
 		
-		String result = Utils.getStringFromBlock(root, i);
-		VirtualDiskBlock vdb = new VirtualDiskBlock(bSize);
-		int blockIndex = Utils.getIntFromBlock(root, i);
+		//Blocks are padded with zeros after the end of the file
+		int length = data.length;
+		if(fileNode != null && fileNode.getLength() >= 0 && fileNode.getLength() < length)
+			length = (int) fileNode.getLength();
+		return new String(data, 0, length, StandardCharsets.ISO_8859_1);
+	}
+	
+	/**
+	 * Copies the contents of the file to a channel without keeping them
+	 * 	in the heap. Runs of consecutive blocks of at least MIN_TRANSFER
+	 * 	bytes go straight from the disk to the channel; shorter pieces are
+	 * 	gathered in a direct buffer and written together.
+	 * @param target channel the contents are written to.
+	 * @return number of bytes written.
+	 * @throws IllegalStateException whenever the method is called 
+	 * 	without initializing a file first.
+	 * @throws IOException whenever the channel can't be written.
+	 */
+	public long transferTo(WritableByteChannel target) 
+			throws IllegalStateException, IOException {
+		if (rootBlock == 0)
+			throw new IllegalStateException("A file must be accessed first.");
+		long length = this.getLength();
+		if(length < 0) {
+			//Without a stored length the whole padded contents are copied
+			ByteBuffer data = ByteBuffer.wrap(this.readFile().getBytes(StandardCharsets.ISO_8859_1));
+			while(data.hasRemaining()) {
+				target.write(data);
+			}
+			return data.capacity();
+		}
 		
-		for(i = bSize - 20; i < bSize; i += 4) {
+		ByteBuffer buffer = null;
+		long pos = 0;
+		int k = this.isExtentFile() ? 0 : -1;
+		while(pos < length) {
+			//Data blocks that follow each other on disk form a single run
+			int first = this.getDataBlock(k, false);
+			long run = Math.min(this.getBlockCapacity(k), length - pos);
+			int blocks = 1;
+			while(k >= 0 && pos + run < length 
+					&& this.getDataBlock(k + blocks, false) == first + blocks) {
+				run = Math.min(run + bSize, length - pos);
+				blocks++;
+			}
 			
-			blockIndex = Utils.getIntFromBlock(root, i);
-			if(blockIndex != 0) {
-				if(i < bSize - 8) {
-					disk.read(blockIndex, vdb);
-					result += Utils.getStringFromBlock(vdb, bSize);
-				} 
-				else if(i == bSize - 8) {
-					OneLevelBlock oneBlock = new OneLevelBlock(disk);
-					oneBlock.getOneLevelBlock(blockIndex);
-					result += oneBlock.readString();
+			if(run >= MIN_TRANSFER) {
+				if(buffer != null)
+					this.flush(buffer, target);
+				disk.transferBlocks(first, run, target);
+			} else {
+				if(buffer == null)
+					buffer = ByteBuffer.allocateDirect((int) Math.min(BUFFER_SIZE, length));
+				if(buffer.remaining() < run)
+					this.flush(buffer, target);
+				buffer.limit(buffer.position() + (int) run);
+				disk.readBlocks(first, buffer);
+				buffer.limit(buffer.capacity());
+			}
+			pos += run;
+			k += blocks;
+		}
+		if(buffer != null)
+			this.flush(buffer, target);
+		return length;
+	}
+	
+	/**
+	 * Writes the bytes gathered in a buffer to a channel and empties it.
+	 */
+	private void flush(ByteBuffer buffer, WritableByteChannel target) throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining()) {
+			target.write(buffer);
+		}
+		buffer.clear();
+	}
+	
+	/**
+	 * Creates a new file with the contents of another one, which may be
+	 * 	in a different disk. The source is streamed into the new file with
+	 * 	transferTo, so neither file is held whole in memory. A copy that 
+	 * 	fails is deleted.
+	 * @param source file whose contents are copied.
+	 * @return number of bytes copied.
+	 * @throws IllegalStateException whenever the source hasn't been initialized.
+	 * @throws IOException whenever the disk of the source can't be read.
+	 * @throws InvalidParameterException whenever the copy is too large
+	 * 	for a file of this disk.
+	 */
+	public long copyFrom(DataFile source) 
+			throws IllegalStateException, IOException, InvalidParameterException {
+		if(!disk.storesLengths()) {
+			//Files of this disk can only be written whole
+			String data = source.readFile();
+			this.createFile(data);
+			return data.length();
+		}
+		this.createFile("");
+		try {
+			return source.transferTo(new Appender());
+		} catch (IOException e) {
+			this.deleteFile();
+			throw e;
+		} catch (RuntimeException e) {
+			this.deleteFile();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Channel that writes what it receives after the end of the file.
+	 */
+	private class Appender implements WritableByteChannel {
+		private long position = 0;
+		private byte[] bytes = new byte[0];
+
+		@Override
+		public int write(ByteBuffer src) {
+			int n = src.remaining();
+			if(bytes.length < n)
+				bytes = new byte[n];
+			src.get(bytes, 0, n);
+			DataFile.this.write(position, bytes, 0, n);
+			position += n;
+			return n;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+	
+	/**
+	 * Reads bytes of the file starting at the given position. Only the
+	 * 	blocks holding the requested bytes are read; runs of whole blocks
+	 * 	of an extent-based file are read with a single transfer.
+	 * @param offset position in the file of the first byte to read.
+	 * @param dst array where the bytes are copied to.
+	 * @param off index in dst where the first byte is copied.
+	 * @param len maximum number of bytes to read.
+	 * @return number of bytes read, or -1 if offset is at or past the
+	 * 	end of the file.
+	 * @throws IllegalStateException whenever no file has been initialized
+	 * 	or the disk doesn't store the length of its files.
+	 * @throws IndexOutOfBoundsException whenever the position is negative or
+	 * 	dst can't hold len bytes after off.
+	 */
+	public int read(long offset, byte[] dst, int off, int len) 
+			throws IllegalStateException, IndexOutOfBoundsException {
+		long length = this.getKnownLength();
+		if(offset < 0 || off < 0 || len < 0 || len > dst.length - off)
+			throw new IndexOutOfBoundsException("Invalid range = " + offset + "+" + len);
+		if(offset >= length)
+			return -1;
+		len = (int) Math.min(len, length - offset);
+		
+		VirtualDiskBlock vdb = new VirtualDiskBlock(bSize);
+		int done = 0;
+		while(done < len) {
+			long pos = offset + done;
+			int k = this.blockOf(pos);
+			int inner = this.offsetInBlock(pos);
+			int run = this.getRun(k, inner, len - done);
+			if(run > 0) {
+				disk.readBlocks(this.getDataBlock(k, false), run, dst, off + done);
+				done += run * bSize;
+				continue;
+			}
+			int n = Math.min(this.getBlockCapacity(k) - inner, len - done);
+			disk.read(this.getDataBlock(k, false), vdb);
+			for(int i = 0; i < n; i++) {
+				dst[off + done + i] = vdb.getElement(inner + i);
+			}
+			done += n;
+		}
+		return len;
+	}
+	
+	/**
+	 * Writes bytes into the file starting at the given position. Only the
+	 * 	blocks holding those bytes are written; blocks are added when the
+	 * 	file grows and bytes between the old end and offset read as zeros.
+	 * @param offset position in the file of the first byte to write.
+	 * @param src array with the bytes to write.
+	 * @param off index in src of the first byte to write.
+	 * @param len number of bytes to write.
+	 * @throws IllegalStateException whenever no file has been initialized
+	 * 	or the disk doesn't store the length of its files.
+	 * @throws IndexOutOfBoundsException whenever the position is negative or
+	 * 	src doesn't hold len bytes after off.
+	 * @throws InvalidParameterException whenever an indexed file would
+	 * 	become too large.
+	 * @throws FullDiskException whenever the disk doesn't have room for
+	 * 	the blocks the file needs; the file is left as it was.
+	 */
+	public void write(long offset, byte[] src, int off, int len) 
+			throws IllegalStateException, IndexOutOfBoundsException, InvalidParameterException,
+			FullDiskException {
+		long length = this.getKnownLength();
+		if(offset < 0 || off < 0 || len < 0 || len > src.length - off)
+			throw new IndexOutOfBoundsException("Invalid range = " + offset + "+" + len);
+		long end = offset + len;
+		if(!this.isExtentFile() && end > (bSize - 20) + (3 * bSize + 
+				(bSize/4) * bSize) + ((bSize/4) * bSize)*(bSize/4))
+			throw new InvalidParameterException("File is too large.");
+		if(this.isExtentFile() && end > Integer.MAX_VALUE)
+			throw new InvalidParameterException("File is too large.");
+		
+		int oldBlocks = this.getBlocksFor(length);
+		int newBlocks = this.getBlocksFor(Math.max(end, length));
+		//The blocks the write takes are reserved before anything changes
+		Reservation reservation = null;
+		if(newBlocks > oldBlocks)
+			reservation = disk.reserve(Math.max(newBlocks - oldBlocks, this.getBlocksNeeded(
+					Math.max(end, length)) - this.getBlocksNeeded(length)), 0);
+		try {
+			//Add the blocks needed past the current end of file
+			if(newBlocks > oldBlocks) {
+				if(this.isExtentFile())
+					this.getExtentMap().addBlocks(newBlocks - oldBlocks);
+				else {
+					for(int k = oldBlocks; k < newBlocks; k++) {
+						this.getDataBlock(k, true);
+					}
 				}
-				else if(i == bSize - 4){
-					TwoLevelBlock twoBlock = new TwoLevelBlock(disk);
-					twoBlock.getTwoLevelBlock(blockIndex);
-					result += twoBlock.readString();
+			}
+			VirtualDiskBlock vdb = new VirtualDiskBlock(bSize);
+			for(int k = oldBlocks; k < Math.min(newBlocks, this.blockOf(offset)); k++) {
+				disk.write(this.getDataBlock(k, false), vdb);
+			}
+		
+			int done = 0;
+			while(done < len) {
+				long pos = offset + done;
+				int k = this.blockOf(pos);
+				int inner = this.offsetInBlock(pos);
+				int run = this.getRun(k, inner, len - done);
+				if(run > 0) {
+					disk.writeBlocks(this.getDataBlock(k, false), run, src, off + done);
+					done += run * bSize;
+					continue;
+				}
+				int n = Math.min(this.getBlockCapacity(k) - inner, len - done);
+				int bn = this.getDataBlock(k, false);
+				//New blocks start empty, existing ones keep the bytes not written
+				if(k >= oldBlocks)
+					vdb = new VirtualDiskBlock(bSize);
+				else if(n < bSize)
+					disk.read(bn, vdb);
+				for(int i = 0; i < n; i++) {
+					vdb.setElement(inner + i, src[off + done + i]);
+				}
+				disk.write(bn, vdb);
+				done += n;
+			}
+		
+			if(end > length) {
+				if(this.isExtentFile()) {
+					ExtentMap map = this.getExtentMap();
+					map.setLength((int) end);
+					map.save();
+					fileNode.setSize(map.getNumBlocks() + 1);
+				} else
+					fileNode.setSize((int) (end / bSize) + 1);
+				fileNode.setLength(end);
+				disk.saveINode(fileNode);
+			}
+		} finally {
+			if(reservation != null)
+				reservation.release();
+		}
+	}
+	
+	/**
+	 * Changes the length of the file in place. When it shrinks, only the
+	 * 	data blocks past the new end are freed, together with the index
+	 * 	blocks left empty, and the rest of the new last block is cleared.
+	 * 	When it grows, the new bytes read as zeros.
+	 * @param size new length of the file in bytes.
+	 * @throws IllegalStateException whenever no file has been initialized
+	 * 	or the disk doesn't store the length of its files.
+	 * @throws InvalidParameterException whenever size is negative or an
+	 * 	indexed file would become too large.
+	 */
+	public void truncate(long size) throws IllegalStateException, InvalidParameterException {
+		long length = this.getKnownLength();
+		if(size < 0)
+			throw new InvalidParameterException("Invalid size = " + size);
+		if(size > length) {
+			this.write(size - 1, new byte[1], 0, 1);
+			return;
+		}
+		if(size == length)
+			return;
+		
+		int oldBlocks = this.getBlocksFor(length);
+		int newBlocks = this.getBlocksFor(size);
+		
+		//Clear the bytes after the new end so later growth reads zeros
+		int inner = this.offsetInBlock(size);
+		int k = this.blockOf(size);
+		if(inner != 0 || k < 0) {
+			VirtualDiskBlock vdb = new VirtualDiskBlock(bSize);
+			int bn = this.getDataBlock(k, false);
+			disk.read(bn, vdb);
+			for(int i = inner; i < this.getBlockCapacity(k); i++) {
+				vdb.setElement(i, (byte) 0);
+			}
+			disk.write(bn, vdb);
+		}
+		
+		if(this.isExtentFile()) {
+			ExtentMap map = this.getExtentMap();
+			map.truncate(newBlocks);
+			map.setLength((int) size);
+			map.save();
+			fileNode.setSize(map.getNumBlocks() + 1);
+		} else {
+			if(newBlocks < oldBlocks) {
+				this.freeIndexedBlocks(newBlocks, oldBlocks);
+				if(blockMap != null)
+					mapSize = Math.min(mapSize, newBlocks);
+			}
+			fileNode.setSize((int) (size / bSize) + 1);
+		}
+		fileNode.setLength(size);
+		disk.saveINode(fileNode);
+	}
+	
+	/**
+	 * Frees the data blocks of an indexed file from the given one to the
+	 * 	end, last to first, together with the one-level and two-level
+	 * 	blocks that become empty.
+	 * @param from number of the first data block to free.
+	 * @param count number of data blocks of the file.
+	 */
+	private void freeIndexedBlocks(int from, int count) {
+		int perBlock = bSize/4;
+		VirtualDiskBlock root = new VirtualDiskBlock(bSize);
+		disk.read(rootBlock, root);
+		
+		//Blocks under the two-level block
+		int base = 3 + perBlock;
+		if(count > base) {
+			int twoLevel = Utils.getIntFromBlock(root, bSize - 4);
+			VirtualDiskBlock tlb = new VirtualDiskBlock(bSize);
+			disk.read(twoLevel, tlb);
+			for(int j = (count - base - 1) / perBlock; j >= 0 && base + j * perBlock + perBlock > from; j--) {
+				int first = base + j * perBlock;
+				int oneLevel = Utils.getIntFromBlock(tlb, j * 4);
+				if(this.freeIndexEntries(oneLevel, Math.max(0, from - first), 
+						Math.min(perBlock, count - first))) {
+					disk.registerFB(oneLevel);
+					Utils.copyIntToBlock(tlb, j * 4, 0);
 				}
 			}
+			if(from <= base) {
+				disk.registerFB(twoLevel);
+				Utils.copyIntToBlock(root, bSize - 4, 0);
+			} else
+				disk.write(twoLevel, tlb);
+		}
+		
+		//Blocks under the one-level block
+		if(count > 3 && from < base) {
+			int oneLevel = Utils.getIntFromBlock(root, bSize - 8);
+			if(this.freeIndexEntries(oneLevel, Math.max(0, from - 3), Math.min(perBlock, count - 3))) {
+				disk.registerFB(oneLevel);
+				Utils.copyIntToBlock(root, bSize - 8, 0);
+			}
+		}
+		
+		//Direct blocks
+		for(int k = Math.min(3, count) - 1; k >= from; k--) {
+			disk.registerFB(Utils.getIntFromBlock(root, bSize - 20 + k * 4));
+			Utils.copyIntToBlock(root, bSize - 20 + k * 4, 0);
+		}
+		disk.write(rootBlock, root);
+	}
+	
+	/**
+	 * Frees the data blocks pointed by the entries of an index block from
+	 * 	the given entry to the end, last to first.
+	 * @param index index block.
+	 * @param from first entry to free.
+	 * @param count number of entries in use.
+	 * @return true if the index block became empty and can be freed, in 
+	 * 	which case it isn't written.
+	 */
+	private boolean freeIndexEntries(int index, int from, int count) {
+		VirtualDiskBlock vdb = new VirtualDiskBlock(bSize);
+		disk.read(index, vdb);
+		for(int i = count - 1; i >= from; i--) {
+			disk.registerFB(Utils.getIntFromBlock(vdb, i * 4));
+			Utils.copyIntToBlock(vdb, i * 4, 0);
+		}
+		if(from == 0)
+			return true;
+		disk.write(index, vdb);
+		return false;
+	}
+	
+	/**
+	 * @return the length of the file.
+	 * @throws IllegalStateException whenever no file has been initialized
+	 * 	or the disk doesn't store the length of its files.
+	 */
+	private long getKnownLength() throws IllegalStateException {
+		if (rootBlock == 0)
+			throw new IllegalStateException("A file must be accessed first.");
+		long length = this.getLength();
+		if(length < 0)
+			throw new IllegalStateException("The length of files isn't stored in this disk.");
+		return length;
+	}
+	
+	/**
+	 * Data blocks are numbered from 0. Indexed files keep their first bytes
+	 * 	in the root block, which is numbered -1.
+	 * @param pos position of a byte in the file.
+	 * @return number of the data block holding the byte.
+	 */
+	private int blockOf(long pos) {
+		long start = this.isExtentFile() ? 0 : bSize - 20;
+		if(pos < start)
+			return -1;
+		return (int) ((pos - start) / bSize);
+	}
+	
+	/**
+	 * @param pos position of a byte in the file.
+	 * @return position of the byte inside its data block.
+	 */
+	private int offsetInBlock(long pos) {
+		long start = this.isExtentFile() ? 0 : bSize - 20;
+		if(pos < start)
+			return (int) pos;
+		return (int) ((pos - start) % bSize);
+	}
+	
+	/**
+	 * @param k number of a data block.
+	 * @return number of bytes of the file the data block holds.
+	 */
+	private int getBlockCapacity(int k) {
+		return k < 0 ? bSize - 20 : bSize;
+	}
+	
+	/**
+	 * @param length length of a file in bytes.
+	 * @return number of data blocks, not counting the root block, that a
+	 * 	file of the given length uses.
+	 */
+	private int getBlocksFor(long length) {
+		long start = this.isExtentFile() ? 0 : bSize - 20;
+		if(length <= start)
+			return 0;
+		return (int) ((length - start + bSize - 1) / bSize);
+	}
+	
+	/**
+	 * @param k number of the first data block of the transfer.
+	 * @param inner position in the block where the transfer starts.
+	 * @param len number of bytes left to transfer.
+	 * @return number of whole consecutive disk blocks that can be 
+	 * 	transferred at once, or 0 if the transfer must go block by block.
+	 */
+	private int getRun(int k, int inner, int len) {
+		if(!this.isExtentFile() || inner != 0 || len < bSize)
+			return 0;
+		ExtentMap map = this.getExtentMap();
+		int e = map.findExtent(k);
+		int left = map.getExtentOffset(e) + map.getExtentLength(e) - k;
+		return Math.min(left, len / bSize);
+	}
+	
+	/**
+	 * @param k number of a data block of the file, -1 for the root block.
+	 * @param allocate whether missing blocks of an indexed file, and the 
+	 * 	index blocks leading to them, are allocated.
+	 * @return index of the disk block, or 0 if it's not allocated.
+	 */
+	private int getDataBlock(int k, boolean allocate) {
+		if(k < 0)
+			return rootBlock;
+		if(this.isExtentFile())
+			return this.getExtentMap().getBlock(k);
+		
+		int[] map = this.getBlockMap();
+		if(k < mapSize)
+			return map[k];
+		if(!allocate)
+			return 0;
+		
+		//Blocks are always added right after the last one
+		int perBlock = bSize/4;
+		VirtualDiskBlock root = new VirtualDiskBlock(bSize);
+		disk.read(rootBlock, root);
+		int bn;
+		if(k < 3)
+			bn = this.getPointer(rootBlock, root, bSize - 20 + k * 4, true, false);
+		else {
+			int i = k - 3;
+			int index;
+			if(i < perBlock)
+				index = this.getPointer(rootBlock, root, bSize - 8, true, true);
+			else {
+				i -= perBlock;
+				int twoLevel = this.getPointer(rootBlock, root, bSize - 4, true, true);
+				VirtualDiskBlock vdb = new VirtualDiskBlock(bSize);
+				disk.read(twoLevel, vdb);
+				index = this.getPointer(twoLevel, vdb, (i / perBlock) * 4, true, true);
+				i %= perBlock;
+			}
+			VirtualDiskBlock vdb = new VirtualDiskBlock(bSize);
+			disk.read(index, vdb);
+			bn = this.getPointer(index, vdb, i * 4, true, false);
 		}
+		this.addToBlockMap(bn);
+		return bn;
+	}
+	
+	/**
+	 * Builds the block map of an indexed file the first time it's needed,
+	 * 	reading the root block and each index block once. The map is then
+	 * 	kept up to date as blocks are added or freed.
+	 * @return disk block of each data block of the file, in order; only 
+	 * 	the first mapSize entries are used.
+	 */
+	private int[] getBlockMap() {
+		if(blockMap != null)
+			return blockMap;
 		
-		return result;
+		blockMap = new int[16];
+		mapSize = 0;
+		VirtualDiskBlock root = new VirtualDiskBlock(bSize);
+		disk.read(rootBlock, root);
+		for(int i = bSize - 20; i < bSize - 8; i += 4) {
+			if(Utils.getIntFromBlock(root, i) == 0)
+				return blockMap;
+			this.addToBlockMap(Utils.getIntFromBlock(root, i));
+		}
+		
+		int oneLevel = Utils.getIntFromBlock(root, bSize - 8);
+		if(oneLevel == 0 || !this.addIndexToBlockMap(oneLevel))
+			return blockMap;
+		
+		int twoLevel = Utils.getIntFromBlock(root, bSize - 4);
+		if(twoLevel != 0) {
+			VirtualDiskBlock vdb = new VirtualDiskBlock(bSize);
+			disk.read(twoLevel, vdb);
+			for(int i = 0; i < bSize && Utils.getIntFromBlock(vdb, i) != 0; i += 4) {
+				if(!this.addIndexToBlockMap(Utils.getIntFromBlock(vdb, i)))
+					break;
+			}
+		}
+		return blockMap;
+	}
+	
+	/**
+	 * Adds the blocks pointed by an index block to the block map.
+	 * @param index one-level index block.
+	 * @return true if the index block is full.
+	 */
+	private boolean addIndexToBlockMap(int index) {
+		VirtualDiskBlock vdb = new VirtualDiskBlock(bSize);
+		disk.read(index, vdb);
+		for(int i = 0; i < bSize; i += 4) {
+			if(Utils.getIntFromBlock(vdb, i) == 0)
+				return false;
+			this.addToBlockMap(Utils.getIntFromBlock(vdb, i));
+		}
+		return true;
+	}
+	
+	/**
+	 * Adds a block after the last one in the block map.
+	 */
+	private void addToBlockMap(int bn) {
+		if(mapSize == blockMap.length)
+			blockMap = Arrays.copyOf(blockMap, mapSize * 2);
+		blockMap[mapSize++] = bn;
+	}
+	
+	/**
+	 * Reads a pointer from a block, allocating a new block for it when 
+	 * 	it's empty and allocate is true. New index blocks are cleared.
+	 * @param block index of the block holding the pointer.
+	 * @param vdb contents of that block.
+	 * @param pos position of the pointer in the block.
+	 * @param allocate whether an empty pointer gets a new block.
+	 * @param index whether the pointer is to an index block.
+	 * @return the pointer's value.
+	 */
+	private int getPointer(int block, VirtualDiskBlock vdb, int pos, boolean allocate, boolean index) {
+		int bn = Utils.getIntFromBlock(vdb, pos);
+		if(bn == 0 && allocate) {
+			bn = disk.getFreeBN();
+			if(index)
+				disk.write(bn, new VirtualDiskBlock(bSize));
+			Utils.copyIntToBlock(vdb, pos, bn);
+			disk.write(block, vdb);
+		}
+		return bn;
+	}
+	
+	/**
+	 * Creates an extent-based file. Blocks are allocated first and each
+	 * 	extent is then written with a single transfer.
+	 * @param string data that will be written into the file.
+	 */
+	private void createExtentFile(String string) {
+		fileNode = disk.getFirstFreeINode();
+		extents = new ExtentMap(disk);
+		extents.create();
+		rootBlock = extents.getRootBlock();
+		
+		byte[] data = string.getBytes(StandardCharsets.ISO_8859_1);
+		int numBlocks = data.length / bSize;
+		if(data.length % bSize != 0)
+			numBlocks++;
+		extents.addBlocks(numBlocks);
+		extents.setLength(data.length);
+		extents.save();
+		
+		data = Arrays.copyOf(data, numBlocks * bSize);
+		for(int i = 0; i < extents.getNumExtents(); i++) {
+			disk.writeBlocks(extents.getExtentStart(i), extents.getExtentLength(i), 
+					data, extents.getExtentOffset(i) * bSize);
+		}
+		
+		fileNode.setBlockIndex(rootBlock);
+		fileNode.setSize(numBlocks + 1);
+		fileNode.setType(INode.EXTENT_FILE);
+		fileNode.setLength(extents.getLength());
+		disk.saveINode(fileNode);
+	}
+	
+	/**
+	 * Reads an extent-based file, one transfer per extent.
+	 * @return the string containing the file's data.
+	 */
+	private String readExtentFile() {
+		ExtentMap map = this.getExtentMap();
+		byte[] data = new byte[map.getNumBlocks() * bSize];
+		for(int i = 0; i < map.getNumExtents(); i++) {
+			disk.readBlocks(map.getExtentStart(i), map.getExtentLength(i), 
+					data, map.getExtentOffset(i) * bSize);
+		}
+		return new String(data, 0, map.getLength(), StandardCharsets.ISO_8859_1);
+	}
+	
+	/**
+	 * @return the block map of an extent-based file, read from disk 
+	 * 	the first time it's needed.
+	 */
+	private ExtentMap getExtentMap() {
+		if(extents == null) {
+			extents = new ExtentMap(disk);
+			extents.load(rootBlock);
+		}
+		return extents;
+	}
+	
+	/**
+	 * Computes the blocks a new file of the given length takes in the 
+	 * 	format of the disk, counting index blocks. Extent files are 
+	 * 	counted as if every block were its own extent.
+	 * @param length length of the file in bytes.
+	 * @return number of blocks, including the root block.
+	 * @throws InvalidParameterException whenever an indexed file
+	 * 	can't be that large.
+	 */
+	public int getBlocksNeeded(long length) throws InvalidParameterException {
+		int perBlock = bSize/4;
+		if(disk.usesExtents()) {
+			int data = (int) ((length + bSize - 1) / bSize);
+			int inRoot = (bSize - 16) / 8;
+			int perLeaf = (bSize - 4) / 8;
+			int leaves = data <= inRoot ? 0 : (data + perLeaf - 1) / perLeaf;
+			return 1 + data + leaves;
+		}
+		if(length > (bSize - 20) + (3 * bSize + perBlock * bSize) + (perBlock * bSize) * perBlock)
+			throw new InvalidParameterException("File is too large.");
+		
+		int data = length <= bSize - 20 ? 0 : (int) ((length - (bSize - 20) + bSize - 1) / bSize);
+		int blocks = 1 + data;
+		if(data > 3)
+			blocks++;
+		if(data > 3 + perBlock)
+			blocks += 1 + (data - 3 - perBlock + perBlock - 1) / perBlock;
+		return blocks;
+	}
+	
+	/**
+	 * @return true if the current file is extent-based.
+	 */
+	public boolean isExtentFile() {
+		return fileNode != null && fileNode.getType() == INode.EXTENT_FILE;
+	}
+	
+	/**
+	 * @return length of the file in bytes, or -1 if the disk 
+	 * 	doesn't store it.
+	 */
+	public long getLength() {
+		if(fileNode == null)
+			return -1;
+		if(fileNode.getLength() < 0 && this.isExtentFile())
+			return this.getExtentMap().getLength();
+		return fileNode.getLength();
 	}
 	
 	/**
@@ -3,6 +3,8 @@ package diskUtilities;
 import java.io.FileNotFoundException;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 
 import exceptions.FullFileException;
 import exceptions.NonEmptyFolderException;
@@ -131,6 +133,173 @@ public class Directory {
 		
 	}
 
+	/**
+	 * Adds the information of several files to the current directory.
+	 * 	Each block of the directory is read and written once, instead of
+	 * 	once per file.
+	 * @param names names of the files to be added.
+	 * @param nodeIndexes indexes of the files' nodes, in the same order.
+	 * @throws InvalidParameterException whenever a name is null or longer
+	 * 	than 20 characters.
+	 * @throws FullFileException whenever the directory can't hold all the
+	 * 	files; nothing is added then.
+	 */
+	public void addFiles(ArrayList<String> names, ArrayList<Integer> nodeIndexes) 
+			throws InvalidParameterException, FullFileException {
+		for(String name : names) {
+			if(name == null)
+				throw new InvalidParameterException("Name is null.");
+			if(name.length() > 20)
+				throw new InvalidParameterException("Name must be 20 characters or less.");
+		}
+		if(names.isEmpty())
+			return;
+		if(this.getFileCount() + names.size() > this.getMaxFiles())
+			throw new FullFileException("Directory can't hold more than " 
+					+ this.getMaxFiles() + " files.");
+		
+		if(numOfBlocks == 0)
+			this.addBlock();
+		int blockIndex = this.getBlock(numOfBlocks - 1);
+		VirtualDiskBlock vdb = new VirtualDiskBlock(bSize);
+		disk.read(blockIndex, vdb);
+		
+		for(int i = 0; i < names.size(); i++) {
+			int indexInBlock = this.getAvailableIndex(vdb);
+			if(indexInBlock < 0 || (blockIndex == rootBlock && indexInBlock + 24 > bSize - 20)) {
+				//Block is full, it's saved before the next one is added
+				disk.write(blockIndex, vdb);
+				vdb = new VirtualDiskBlock(bSize);
+				blockIndex = this.addBlock();
+				indexInBlock = 0;
+			}
+			Utils.copyStringToBlock(vdb, indexInBlock, 20, names.get(i));
+			Utils.copyIntToBlock(vdb, indexInBlock + 20, nodeIndexes.get(i));
+		}
+		disk.write(blockIndex, vdb);
+	}
+	
+	/**
+	 * Removes the entries of the given files from the end of the directory,
+	 * 	undoing an addFiles or addFile that didn't finish. Entries are 
+	 * 	matched by I-Node and removed from the last one back, stopping at
+	 * 	the first that belongs to another file. Blocks left empty are freed.
+	 * @param nodeIndexes indexes of the files' nodes.
+	 * @return number of entries removed.
+	 */
+	public int removeLastFiles(ArrayList<Integer> nodeIndexes) {
+		HashSet<Integer> indexes = new HashSet<Integer>(nodeIndexes);
+		int removed = 0;
+		while(numOfBlocks > 0) {
+			int blockIndex = this.getBlock(numOfBlocks - 1);
+			VirtualDiskBlock vdb = new VirtualDiskBlock(bSize);
+			disk.read(blockIndex, vdb);
+			int end = this.getEntriesInBlock(blockIndex, vdb) * 24;
+			while(end > 0 && indexes.contains(Utils.getIntFromBlock(vdb, end - 4))) {
+				end -= 24;
+				Utils.clearBlockSpace(vdb, end, 20);
+				Utils.copyIntToBlock(vdb, end + 20, 0);
+				removed++;
+			}
+			if(end > 0) {
+				disk.write(blockIndex, vdb);
+				return removed;
+			}
+			this.deleteBlock(blockIndex);
+		}
+		return removed;
+	}
+	
+	/**
+	 * Counts the files in the directory. Only the last block of the 
+	 * 	directory is read.
+	 * @return number of files.
+	 */
+	public int getFileCount() {
+		if(numOfBlocks == 0)
+			return 0;
+		int blockIndex = this.getBlock(numOfBlocks - 1);
+		VirtualDiskBlock vdb = new VirtualDiskBlock(bSize);
+		disk.read(blockIndex, vdb);
+		int inLast = this.getEntriesInBlock(blockIndex, vdb);
+		if(numOfBlocks == 1)
+			return inLast;
+		return (bSize - 20)/24 + (numOfBlocks - 2) * filesPerBlock + inLast;
+	}
+	
+	/**
+	 * Computes the files a directory can hold with the disk's block size:
+	 * 	the root block, three direct blocks, a one level block and the two
+	 * 	level block, which can't add blocks once it has bSize/4 one level
+	 * 	blocks, so its last one holds a single block.
+	 * @return number of files.
+	 */
+	public int getMaxFiles() {
+		int perBlock = bSize/4;
+		int maxBlocks = 4 + perBlock + (perBlock - 1) * perBlock + 1;
+		return (bSize - 20)/24 + (maxBlocks - 1) * filesPerBlock;
+	}
+	
+	/**
+	 * @param blockIndex index of a data block of the directory.
+	 * @param vdb contents of the block.
+	 * @return number of entries in the block.
+	 */
+	private int getEntriesInBlock(int blockIndex, VirtualDiskBlock vdb) {
+		int index = this.getAvailableIndex(vdb);
+		int entries = index < 0 ? filesPerBlock : index / 24;
+		if(blockIndex == rootBlock)
+			entries = Math.min(entries, (bSize - 20)/24);
+		return entries;
+	}
+	
+	/**
+	 * Computes the blocks a new directory with the given number of files
+	 * 	takes, counting index blocks.
+	 * @param files number of files in the directory.
+	 * @return number of blocks, including the root block.
+	 */
+	public int getBlocksNeeded(int files) {
+		int inRoot = (bSize - 20) / 24;
+		int perBlock = bSize / 24;
+		int blocks = 1;
+		if(files > inRoot)
+			blocks += (files - inRoot + perBlock - 1) / perBlock;
+		return blocks + this.getIndexBlocks(blocks);
+	}
+	
+	/**
+	 * Computes the blocks adding one more file to the directory takes.
+	 * 	Only the last block of the directory is read.
+	 * @return 0 when the last block has room for the file, otherwise the
+	 * 	new block and the index blocks it needs.
+	 */
+	public int getBlocksNeededToAdd() {
+		if(numOfBlocks == 0)
+			return 1;
+		int blockIndex = this.getBlock(numOfBlocks - 1);
+		VirtualDiskBlock vdb = new VirtualDiskBlock(bSize);
+		disk.read(blockIndex, vdb);
+		int indexInBlock = this.getAvailableIndex(vdb);
+		if(indexInBlock >= 0 && (blockIndex != rootBlock || indexInBlock + 24 <= bSize - 20))
+			return 0;
+		return 1 + this.getIndexBlocks(numOfBlocks + 1) - this.getIndexBlocks(numOfBlocks);
+	}
+	
+	/**
+	 * @param blocks number of blocks of a directory, including the root block.
+	 * @return number of index blocks the directory takes.
+	 */
+	private int getIndexBlocks(int blocks) {
+		int perBlock = bSize/4;
+		int index = 0;
+		if(blocks > 4)
+			index++;
+		if(blocks > 4 + perBlock)
+			index += 1 + (blocks - 4 - perBlock + perBlock - 1) / perBlock;
+		return index;
+	}
+	
 	/**
 	 * Removes a file's information from the current directory.
 	 * @param name name of the file that will be removed.
@@ -252,6 +421,68 @@ public class Directory {
 		return list;
 	}
 
+	/**
+	 * Retrieves the I-Nodes of all the files in the current directory,
+	 * 	in the same order as getFiles().
+	 * @return An ArrayList with the I-Nodes of the files.
+	 */
+	public ArrayList<INode> getFileNodes() {
+		ArrayList<INode> list = new ArrayList<INode>();
+		
+		for(int i = 0; i < numOfBlocks; i++) {
+			int index = this.getBlock(i);
+			VirtualDiskBlock vdb = new VirtualDiskBlock(bSize);
+			disk.read(index, vdb);
+			for(int j = 0; j < filesPerBlock; j++) {
+				if(Character.isLetter(Utils.getCharFromBlock(vdb, j * 24)))
+					list.add(disk.getINode(Utils.getIntFromBlock(vdb, j * 24 + 20)));
+			}
+		}
+		
+		return list;
+	}
+
+	/**
+	 * Lists every block the current directory uses, so they can be freed
+	 * 	together. The root block and each index block are read once.
+	 * @return data blocks and index blocks of the directory, with the
+	 * 	root block last; empty if the directory has no blocks.
+	 */
+	public int[] getAllBlocks() {
+		if(numOfBlocks == 0)
+			return new int[0];
+		
+		int[] blocks = new int[numOfBlocks + bSize/4 + 2];
+		int n = 0;
+		VirtualDiskBlock root = new VirtualDiskBlock(bSize);
+		disk.read(rootBlock, root);
+		for(int i = 1; i < numOfBlocks && i < 4; i++) {
+			blocks[n++] = Utils.getIntFromBlock(root, (bSize - 20) + (i - 1) * 4);
+		}
+		if(numOfBlocks > 4) {
+			OneLevelBlock olb = new OneLevelBlock(disk);
+			olb.getOneLevelBlock(Utils.getIntFromBlock(root, bSize - 8));
+			for(int i = 0; i < olb.getSize(); i++) {
+				blocks[n++] = olb.getDiskBlock(i);
+			}
+			blocks[n++] = olb.getRootBlock();
+		}
+		if(numOfBlocks > 4 + bSize/4) {
+			TwoLevelBlock tlb = new TwoLevelBlock(disk);
+			tlb.getTwoLevelBlock(Utils.getIntFromBlock(root, bSize - 4));
+			for(int j = 0; j < tlb.getNumOfOneBlocks(); j++) {
+				OneLevelBlock olb = tlb.getOneLevelBlock(j);
+				for(int i = 0; i < olb.getSize(); i++) {
+					blocks[n++] = olb.getDiskBlock(i);
+				}
+				blocks[n++] = olb.getRootBlock();
+			}
+			blocks[n++] = tlb.getRootBlock();
+		}
+		blocks[n++] = rootBlock;
+		return Arrays.copyOf(blocks, n);
+	}
+
 	/**
 	 * Deletes a block of data from the current directory.
 	 * @param blockIndex disk index of the block that wants to be deleted.
@@ -313,9 +544,13 @@ public class Directory {
 		VirtualDiskBlock root = new VirtualDiskBlock(bSize);
 		disk.read(rootBlock, root);
 
-		if(numOfBlocks == 0)
+		if(numOfBlocks == 0) {
+			//Directory was emptied, so it needs a new root block.
 			rootBlock = disk.getFreeBN();
-		if(numOfBlocks == 1 && filesInRoot > 0) {
+			newBlock = rootBlock;
+			dirNode.setBlockIndex(rootBlock);
+			disk.write(rootBlock, new VirtualDiskBlock(bSize));
+		} else if(numOfBlocks == 1 && filesInRoot > 0) {
 			newBlock = disk.getFreeBN();
 			Utils.copyIntToBlock(root, bSize - 20, newBlock);
 			disk.write(rootBlock, root);
@@ -0,0 +1,36 @@
+package diskUtilities;
+
+/**
+ * Management interface with the live state of a mounted DiskUnit.
+ */
+public interface DiskMXBean {
+
+	String getName();
+
+	int getCapacity();
+
+	int getBlockSize();
+
+	int getFreeBlocks();
+
+	int getNumOfINodes();
+
+	int getFreeINodes();
+
+	long getBlockReads();
+
+	long getBlockWrites();
+
+	long getINodeReads();
+
+	long getINodeSaves();
+
+	long getBlockAllocations();
+
+	long getBlockReleases();
+
+	/**
+	 * Clears the I/O statistics of the disk.
+	 */
+	void resetStats();
+}
@@ -1,70 +1,82 @@
 package diskUtilities;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.Scanner;
 import exceptions.NonExistingDiskException;
 
 /**
  * A list that keeps track of available DiskUnits and saves them
- * 	into a file for future use.
+ * 	into a catalog file for future use.
+ *
+ * The catalog is binary: a header followed by one record per change,
+ * 	either a disk that was added, with its capacity and block size, or
+ * 	the name of a disk that was removed. Changes are appended as they
+ * 	happen and the file is rewritten only when removed disks take more
+ * 	records than the disks that remain. Disks are indexed by name, and
+ * 	a catalog in the old DiskNames.txt format is migrated the first
+ * 	time it's found. A catalog that can't be read, such as one written
+ * 	by a newer version, is never changed.
  */
 public class DiskManager {
-	
-	private ArrayList<ManagerNode> diskList;
-	private int numDisks;
-	private String formatStr;
-	private final String PATH = "DiskUnits\\DiskNames.txt";
-	
-	
+
+	private static final String PATH = "DiskUnits/DiskCatalog.dat";
+	private static final String LEGACY_PATH = "DiskUnits\\DiskNames.txt";
+	private static final String DISKS_PATH = "DiskUnits/";
+	private static final int MAGIC = 0x44534b43;		// "DSKC"
+	private static final int VERSION = 1;
+	private static final byte ADD = 1;
+	private static final byte REMOVE = 2;
+	private static final int MIN_GARBAGE = 64;			// dead records before compacting
+
+	private LinkedHashMap<String, ManagerNode> disks;	// by name, in order of creation
+	private ArrayList<ManagerNode> diskList;			// ordered view, null after changes
+	private int records;								// records in the catalog file
+	private long validLength;							// bytes of complete records
+	private DataOutputStream out;						// open after the first change
+	private boolean unreadable;							// the catalog can't be read or changed
+
 	/**
-	 * Initializes the file that contains the information
-	 * 	of the disks and copies them to a list.
+	 * Reads the catalog of the disks, creating it from the old list
+	 * 	of disks if there's one.
 	 */
 	public DiskManager() {
-		
+		disks = new LinkedHashMap<String, ManagerNode>();
 		File file = new File(PATH);
-		formatStr = "%-15s %-10s %-10s";
-		diskList = new ArrayList<ManagerNode>();
-		
-	    if (file.exists()) {
-	    	Scanner read;
-	    	try {
-				read = new Scanner (file);
-				read.useDelimiter(" , ");
-				read.nextLine();
-
-				while (read.hasNext() && read.hasNextLine())
-				{
-					String name = read.next().trim();
-					String y = read.next().trim();
-					String x = read.next().trim();
-					diskList.add(new ManagerNode(name, Integer.parseInt(y), Integer.parseInt(x)));
-					read.nextLine();
-					numDisks++;
-				}
-				read.close();
-			} catch (FileNotFoundException e) {
-				System.out.println("Unable to open DiskNames.txt");
-			}
-	    } 
+		if(file.exists())
+			this.load(file);
+		else if(new File(LEGACY_PATH).exists()) {
+			this.migrate(new File(LEGACY_PATH));
+			this.compact();
+		}
 	}
 
 	/**
-	 * Adds a disk to the list of available disks.
+	 * Adds a disk to the list of available disks. A disk with the same
+	 * 	name is replaced, keeping its place in the list.
 	 * @param name name of the disk to be added.
 	 * @param cap capacity of the given disk.
 	 * @param bs size of the disk blocks.
+	 * @throws IllegalStateException whenever the catalog can't be read.
 	 */
-	public void addDisk(String name, int cap, int bs) {
-		numDisks++;
-		diskList.add(new ManagerNode(name, cap, bs));
+	public void addDisk(String name, int cap, int bs) throws IllegalStateException {
+		this.append(ADD, name, cap, bs);
+		disks.put(name, new ManagerNode(name, cap, bs));
+		diskList = null;
 	}
-	
+
 	/**
 	 * Retrieves the disk in the given index.
 	 * @param index index to search for disk.
@@ -73,82 +85,230 @@ public class DiskManager {
 	 * 	is out of bounds.
 	 */
 	public ManagerNode getDisk(int index) throws InvalidParameterException {
-		if (index < 0 || index > numDisks)
+		if (index < 0 || index >= disks.size())
 			throw new InvalidParameterException("Invalid index = " + index);
-		return diskList.get(index);
+		return this.getDisks().get(index);
+	}
+
+	/**
+	 * @param name name of a disk.
+	 * @return the information of the disk, or null if there's no
+	 * 	disk with that name.
+	 */
+	public ManagerNode getDisk(String name) {
+		return disks.get(name);
+	}
+
+	/**
+	 * @return the available disks, in the order they were created.
+	 */
+	public ArrayList<ManagerNode> getDisks() {
+		if(diskList == null)
+			diskList = new ArrayList<ManagerNode>(disks.values());
+		return diskList;
 	}
-	
+
 	/**
 	 * Removes a specified disk from the list of disks.
 	 * @param name name of the disk that will be removed.
 	 * @throws NonExistingDiskException whenever the list is empty
 	 * 	or the disk is not found.
+	 * @throws IllegalStateException whenever the catalog can't be read.
 	 */
-	public void removeDisk(String name) 
-			throws NonExistingDiskException {
-		if(numDisks == 0) 
+	public void removeDisk(String name)
+			throws NonExistingDiskException, IllegalStateException {
+		if(disks.isEmpty())
 			throw new NonExistingDiskException("There are no available disks.");
-		
-		int i = 0;
-		ManagerNode disk = diskList.get(i);
-		while(!disk.getName().contains(name) && i < numDisks)
-			disk = diskList.get(++i);
-		
-		if(i >= numDisks)
+		if(!disks.containsKey(name))
 			throw new NonExistingDiskException("Disk was not found");
-		else {
-			diskList.remove(i);
-			numDisks--;
-		}
+		this.append(REMOVE, name, 0, 0);
+		disks.remove(name);
+		diskList = null;
 	}
-	
+
 	/**
-	 * Simulates closing the file.
+	 * Closes the catalog, compacting it if most of its records are
+	 * 	of removed disks.
 	 */
 	public void close() {
-		saveList();
+		if(out != null) {
+			try {
+				out.close();
+			} catch (IOException x) {
+				System.err.println(x);
+			}
+			out = null;
+		}
+		if(records - disks.size() > MIN_GARBAGE && records > 2 * disks.size())
+			this.compact();
+		disks = null;
 		diskList = null;
-		numDisks = 0;
 	}
-	
+
+	/**
+	 * @return a nonnegative integer representing the amount of
+	 * 	disks that are available.
+	 */
+	public int getNumberOfDisks() {
+		return disks.size();
+	}
+
+	/**
+	 * Reads every record of the catalog. A record cut short, left by a
+	 * 	write that didn't finish, is ignored and overwritten by the next
+	 * 	change. A catalog whose header isn't recognized is marked as
+	 * 	unreadable, so it isn't replaced by an empty one.
+	 */
+	private void load(File file) {
+		try {
+			byte[] data = Files.readAllBytes(file.toPath());
+			ByteArrayInputStream bytes = new ByteArrayInputStream(data);
+			DataInputStream in = new DataInputStream(bytes);
+			if(data.length == 0)
+				return;
+			if(data.length < 8 || in.readInt() != MAGIC || in.readInt() != VERSION) {
+				System.err.println("Unknown format of " + PATH);
+				unreadable = true;
+				return;
+			}
+			validLength = 8;
+			while(bytes.available() > 0) {
+				byte type = in.readByte();
+				String name = in.readUTF();
+				if(type == ADD) {
+					int cap = in.readInt();
+					int bs = in.readInt();
+					disks.put(name, new ManagerNode(name, cap, bs));
+				} else
+					disks.remove(name);
+				records++;
+				validLength = data.length - bytes.available();
+			}
+		} catch (EOFException e) {
+			//The last record is incomplete
+		} catch (IOException e) {
+			System.err.println("Unable to read " + PATH + ": " + e.getMessage());
+			unreadable = true;
+		}
+	}
+
+	/**
+	 * Reads the disks of a list in the old text format. Its columns
+	 * 	were swapped each time it was saved, so the capacity and block
+	 * 	size are taken from block 0 of each disk when the disk exists.
+	 */
+	private void migrate(File file) {
+		Scanner read;
+		try {
+			read = new Scanner (file);
+			read.useDelimiter(" , ");
+			read.nextLine();
+
+			while (read.hasNext() && read.hasNextLine())
+			{
+				String name = read.next().trim();
+				int bs = Integer.parseInt(read.next().trim());
+				int cap = Integer.parseInt(read.next().trim());
+				read.nextLine();
+				RandomAccessFile disk = null;
+				try {
+					disk = new RandomAccessFile(DISKS_PATH + name, "r");
+					cap = disk.readInt();
+					bs = disk.readInt();
+				} catch (IOException e) {
+					//Keep the values of the list
+				} finally {
+					if(disk != null)
+						disk.close();
+				}
+				disks.put(name, new ManagerNode(name, cap, bs));
+			}
+			read.close();
+		} catch (IOException e) {
+			System.out.println("Unable to open DiskNames.txt");
+		}
+	}
+
 	/**
-	 * Saves the contents of the list into the file.
+	 * Appends a change to the catalog.
+	 * @throws IllegalStateException whenever the catalog can't be read.
 	 */
-	private void saveList() {
-		
-		String header = String.format(formatStr, "Disk", "BlockSize", "Capacity");
-		
+	private void append(byte type, String name, int cap, int bs) throws IllegalStateException {
+		if(unreadable)
+			throw new IllegalStateException("The catalog of disks can't be read, so it isn't changed: " 
+					+ PATH);
 		try {
-			PrintWriter out = new PrintWriter(PATH, "UTF-8");
-			out.println(header);
-			for(ManagerNode node : diskList){
-				out.println(String.format(formatStr, node.getName() + " , "
-						, node.getBlocksize() + " , ", node.getCapacity() + " , "));
+			if(out == null) {
+				File file = new File(PATH);
+				if(!file.exists() || file.length() == 0)
+					this.compact();
+				else if(file.length() != validLength) {
+					//The last record is incomplete
+					RandomAccessFile raf = new RandomAccessFile(file, "rw");
+					raf.setLength(validLength);
+					raf.close();
+				}
+				out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+			}
+			int start = out.size();
+			out.writeByte(type);
+			out.writeUTF(name);
+			if(type == ADD) {
+				out.writeInt(cap);
+				out.writeInt(bs);
 			}
-			out.close();
+			out.flush();
+			records++;
+			validLength += out.size() - start;
 		} catch (IOException x) {
 			System.err.println(x);
 		}
-		
 	}
-	
+
 	/**
-	 * @return a nonnegative integer representing the amount of
-	 * 	disks that are available.
+	 * Rewrites the catalog with one record per available disk. The new
+	 * 	catalog is written to a separate file that then replaces it.
 	 */
-	public int getNumberOfDisks() {
-		return numDisks;
+	private void compact() {
+		File tmp = new File(PATH + ".tmp");
+		DataOutputStream catalog = null;
+		try {
+			catalog = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			catalog.writeInt(MAGIC);
+			catalog.writeInt(VERSION);
+			for(ManagerNode node : disks.values()) {
+				catalog.writeByte(ADD);
+				catalog.writeUTF(node.getName());
+				catalog.writeInt(node.getCapacity());
+				catalog.writeInt(node.getBlocksize());
+			}
+			catalog.close();
+			catalog = null;
+			Files.move(tmp.toPath(), new File(PATH).toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			records = disks.size();
+			validLength = new File(PATH).length();
+		} catch (IOException x) {
+			System.err.println(x);
+		} finally {
+			try {
+				if(catalog != null)
+					catalog.close();
+			} catch (IOException x) {
+				System.err.println(x);
+			}
+		}
 	}
-	
+
 	/**
-	 * An object that stores the information of a disk including its 
+	 * An object that stores the information of a disk including its
 	 * 	name, capacity and block size.
 	 */
 	public class ManagerNode {
 		private String name;
 		private int capacity;
 		private int blocksize;
-		
+
 		/**
 		 * Initializes the node with specified parameters.
 		 * @param name name of the disk to be stored.
@@ -205,4 +365,4 @@ public class DiskManager {
 			this.blocksize = blocksize;
 		}
 	}
-}
\ No newline at end of file
+}
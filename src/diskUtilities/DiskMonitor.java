@@ -0,0 +1,120 @@
+package diskUtilities;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Exposes a mounted DiskUnit as a platform MBean named
+ * "FileSystem:type=Disk,name=<disk name>".
+ */
+public class DiskMonitor implements DiskMXBean {
+
+	private DiskUnit disk;
+	private String name;
+	private ObjectName objectName;
+
+	private DiskMonitor(DiskUnit disk) {
+		this.disk = disk;
+		name = disk.getDiskName();
+	}
+
+	/**
+	 * Registers an MBean for the given disk.
+	 * @param disk mounted disk to expose.
+	 * @return the registered monitor, to be unregistered when the
+	 * 	disk is unmounted.
+	 */
+	public static DiskMonitor register(DiskUnit disk) {
+		DiskMonitor monitor = new DiskMonitor(disk);
+		try {
+			monitor.objectName = new ObjectName("FileSystem:type=Disk,name="
+					+ ObjectName.quote(monitor.name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(monitor, monitor.objectName);
+		} catch (JMException e) {
+			System.err.println("Unable to register MBean for " + monitor.name + ": " + e.getMessage());
+			monitor.objectName = null;
+		}
+		return monitor;
+	}
+
+	/**
+	 * Removes the MBean of the disk.
+	 */
+	public void unregister() {
+		if(objectName == null)
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (JMException e) {
+			System.err.println("Unable to unregister MBean for " + name + ": " + e.getMessage());
+		}
+		objectName = null;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getCapacity() {
+		return disk.getCapacity();
+	}
+
+	@Override
+	public int getBlockSize() {
+		return disk.getBlockSize();
+	}
+
+	@Override
+	public int getFreeBlocks() {
+		return disk.getFreeBlockCount();
+	}
+
+	@Override
+	public int getNumOfINodes() {
+		return disk.getNumOfINodes();
+	}
+
+	@Override
+	public int getFreeINodes() {
+		return disk.getFreeINodeCount();
+	}
+
+	@Override
+	public long getBlockReads() {
+		return disk.getStats().getCount(DiskStats.BLOCK_READ);
+	}
+
+	@Override
+	public long getBlockWrites() {
+		return disk.getStats().getCount(DiskStats.BLOCK_WRITE);
+	}
+
+	@Override
+	public long getINodeReads() {
+		return disk.getStats().getCount(DiskStats.INODE_READ);
+	}
+
+	@Override
+	public long getINodeSaves() {
+		return disk.getStats().getCount(DiskStats.INODE_SAVE);
+	}
+
+	@Override
+	public long getBlockAllocations() {
+		return disk.getStats().getCount(DiskStats.BLOCK_ALLOC);
+	}
+
+	@Override
+	public long getBlockReleases() {
+		return disk.getStats().getCount(DiskStats.BLOCK_FREE);
+	}
+
+	@Override
+	public void resetStats() {
+		disk.getStats().reset();
+	}
+}
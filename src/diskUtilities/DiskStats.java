@@ -0,0 +1,248 @@
+package diskUtilities;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms for the I/O operations of a DiskUnit.
+ * Every operation is also attributed to the command that is currently
+ * being executed, if any. Histograms use power of two buckets measured
+ * in nanoseconds, so percentiles are upper bounds of their bucket.
+ */
+public class DiskStats {
+
+	public static final int BLOCK_READ = 0;
+	public static final int BLOCK_WRITE = 1;
+	public static final int INODE_READ = 2;
+	public static final int INODE_SAVE = 3;
+	public static final int BLOCK_ALLOC = 4;
+	public static final int BLOCK_FREE = 5;
+	public static final int NUM_OPS = 6;
+	private static final String[] OP_NAMES = {"block read", "block write",
+		"inode read", "inode save", "block alloc", "block free"};
+	private static final int BUCKETS = 64;
+	// Per command entry: number of calls followed by one counter per operation.
+	private static final int CALLS = NUM_OPS;
+
+	private AtomicLongArray counts;
+	private AtomicLongArray totalNanos;
+	private AtomicLongArray histograms;
+	private ConcurrentHashMap<String, AtomicLongArray> commands;
+	private volatile AtomicLongArray currentCommand;
+
+	/**
+	 * Creates an empty set of statistics.
+	 */
+	public DiskStats() {
+		commands = new ConcurrentHashMap<String, AtomicLongArray>();
+		this.reset();
+	}
+
+	/**
+	 * Records one operation.
+	 * @param op operation type, one of the constants of this class.
+	 * @param nanos duration of the operation.
+	 */
+	public void record(int op, long nanos) {
+		this.record(op, 1, nanos);
+	}
+
+	/**
+	 * Records a transfer of several blocks as that many operations, each
+	 * taking an equal share of the time.
+	 * @param op operation type, one of the constants of this class.
+	 * @param n number of operations.
+	 * @param nanos duration of the whole transfer.
+	 */
+	public void record(int op, int n, long nanos) {
+		counts.addAndGet(op, n);
+		totalNanos.addAndGet(op, nanos);
+		histograms.addAndGet(op * BUCKETS + bucket(nanos / n), n);
+		AtomicLongArray cmd = currentCommand;
+		if(cmd != null)
+			cmd.addAndGet(op, n);
+	}
+
+	/**
+	 * @param op operation type.
+	 * @return number of operations of the given type recorded so far.
+	 */
+	public long getCount(int op) {
+		return counts.get(op);
+	}
+
+	/**
+	 * Attributes the following operations to the given command until
+	 * endCommand() is called.
+	 * @param name name of the command being executed.
+	 */
+	public void beginCommand(String name) {
+		AtomicLongArray cmd = commands.get(name);
+		if(cmd == null) {
+			commands.putIfAbsent(name, new AtomicLongArray(NUM_OPS + 1));
+			cmd = commands.get(name);
+		}
+		cmd.incrementAndGet(CALLS);
+		currentCommand = cmd;
+	}
+
+	/**
+	 * Stops attributing operations to the current command.
+	 */
+	public void endCommand() {
+		currentCommand = null;
+	}
+
+	/**
+	 * Clears all counters and histograms.
+	 */
+	public void reset() {
+		counts = new AtomicLongArray(NUM_OPS);
+		totalNanos = new AtomicLongArray(NUM_OPS);
+		histograms = new AtomicLongArray(NUM_OPS * BUCKETS);
+		commands.clear();
+		currentCommand = null;
+	}
+
+	/**
+	 * @return a copy of the current statistics that won't change
+	 * 	with further operations.
+	 */
+	public Snapshot snapshot() {
+		Snapshot s = new Snapshot();
+		for(int op = 0; op < NUM_OPS; op++) {
+			s.counts[op] = counts.get(op);
+			s.totalNanos[op] = totalNanos.get(op);
+			for(int b = 0; b < BUCKETS; b++) {
+				s.histograms[op][b] = histograms.get(op * BUCKETS + b);
+			}
+		}
+		for(Map.Entry<String, AtomicLongArray> e : commands.entrySet()) {
+			long[] values = new long[NUM_OPS + 1];
+			for(int i = 0; i < values.length; i++) {
+				values[i] = e.getValue().get(i);
+			}
+			s.commands.put(e.getKey(), values);
+		}
+		return s;
+	}
+
+	/**
+	 * @return index of the histogram bucket for the given duration.
+	 */
+	private static int bucket(long nanos) {
+		if(nanos <= 0)
+			return 0;
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+	}
+
+	/**
+	 * @param op operation type.
+	 * @return readable name of the operation.
+	 */
+	public static String getOperationName(int op) {
+		return OP_NAMES[op];
+	}
+
+	/**
+	 * Immutable copy of the statistics at a point in time.
+	 */
+	public static class Snapshot {
+		private long[] counts = new long[NUM_OPS];
+		private long[] totalNanos = new long[NUM_OPS];
+		private long[][] histograms = new long[NUM_OPS][BUCKETS];
+		private TreeMap<String, long[]> commands = new TreeMap<String, long[]>();
+
+		private Snapshot() {
+		}
+
+		/**
+		 * @param op operation type.
+		 * @return number of operations of the given type.
+		 */
+		public long getCount(int op) {
+			return counts[op];
+		}
+
+		/**
+		 * @param op operation type.
+		 * @return total nanoseconds spent in operations of the given type.
+		 */
+		public long getTotalNanos(int op) {
+			return totalNanos[op];
+		}
+
+		/**
+		 * @param op operation type.
+		 * @param p percentile between 0 and 100.
+		 * @return upper bound in nanoseconds of the bucket holding
+		 * 	the percentile, or 0 if no operations were recorded.
+		 */
+		public long getPercentile(int op, double p) {
+			if(counts[op] == 0)
+				return 0;
+			long rank = (long) Math.ceil(p / 100 * counts[op]);
+			long seen = 0;
+			for(int b = 0; b < BUCKETS; b++) {
+				seen += histograms[op][b];
+				if(seen >= rank && seen > 0)
+					return b == 0 ? 0 : 1L << b;
+			}
+			return 1L << (BUCKETS - 1);
+		}
+
+		/**
+		 * @return names of the commands that performed operations.
+		 */
+		public ArrayList<String> getCommands() {
+			return new ArrayList<String>(commands.keySet());
+		}
+
+		/**
+		 * @param command name of the command.
+		 * @return number of times the command was executed.
+		 */
+		public long getCommandCalls(String command) {
+			long[] values = commands.get(command);
+			return values == null ? 0 : values[CALLS];
+		}
+
+		/**
+		 * @param command name of the command.
+		 * @param op operation type.
+		 * @return number of operations of the given type the command caused.
+		 */
+		public long getCommandCount(String command, int op) {
+			long[] values = commands.get(command);
+			return values == null ? 0 : values[op];
+		}
+
+		/**
+		 * @return the statistics as lines of text to show to the user.
+		 */
+		public ArrayList<String> toLines() {
+			ArrayList<String> lines = new ArrayList<String>();
+			lines.add(String.format("%-12s %10s %10s %10s %10s %10s", "operation",
+					"count", "total(ms)", "mean(us)", "p50(us)", "p99(us)"));
+			for(int op = 0; op < NUM_OPS; op++) {
+				double mean = counts[op] == 0 ? 0 : (double) totalNanos[op] / counts[op];
+				lines.add(String.format(Locale.ROOT, "%-12s %10d %10.2f %10.2f %10.2f %10.2f",
+						OP_NAMES[op], counts[op], totalNanos[op] / 1e6, mean / 1e3,
+						getPercentile(op, 50) / 1e3, getPercentile(op, 99) / 1e3));
+			}
+			lines.add(String.format("%-12s %6s %8s %8s %8s %8s %8s %8s", "command", "calls",
+					"reads", "writes", "in.reads", "in.saves", "allocs", "frees"));
+			for(Map.Entry<String, long[]> e : commands.entrySet()) {
+				long[] v = e.getValue();
+				lines.add(String.format("%-12s %6d %8d %8d %8d %8d %8d %8d", e.getKey(),
+						v[CALLS], v[BLOCK_READ], v[BLOCK_WRITE], v[INODE_READ],
+						v[INODE_SAVE], v[BLOCK_ALLOC], v[BLOCK_FREE]));
+			}
+			return lines;
+		}
+	}
+}
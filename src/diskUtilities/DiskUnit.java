@@ -2,13 +2,22 @@ package diskUtilities;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import exceptions.ExistingDiskException;
 import exceptions.FullDiskException;
 import exceptions.InvalidBlockException;
 import exceptions.InvalidBlockNumberException;
 import exceptions.InvalidIndexException;
 import exceptions.NonExistingDiskException;
+import stack.GrowableIntStack;
 
 /**
 *  Object to represent a virtual disk that stores and reads data managed as
@@ -20,13 +29,39 @@ public class DiskUnit {
 	private static final int DEFAULT_CAPACITY = 1024;  	// default number of blocks 	
 	private static final int DEFAULT_BLOCK_SIZE = 256; 	// default number of bytes per block
 	private static final String FILEPATH = "DiskUnits/";
+	private static final int EXTENTS_FLAG = 1;			// new files are extent-based
+	private static final int LONG_INODES_FLAG = 2;		// I-Nodes store the length of their file
+	private static final int COUNTS_FLAG = 4;			// block 0 holds the free block and I-Node counts
+	private static final int INODE_SIZE = 17;			// block index, size, type and length
+	private static final int LEGACY_INODE_SIZE = 9;		// block index, size and type
+	// Most disks kept open at once, mounted or not; set with -DfileSystem.maxOpenDisks
+	private static final int MAX_OPEN_DISKS = Integer.getInteger("fileSystem.maxOpenDisks", 16);
+	private static final int FREE_BATCH = 65536;		// blocks freed per registerFBs call
+	private static final int DEFAULT_BYTES_PER_INODE = 100;	// one I-Node per 100 bytes of the disk
+	private static final int INODE_SCAN_BATCH = 64;	// table blocks read at once
+	// Open disks by name, least recently mounted first
+	private static final LinkedHashMap<String, DiskUnit> pool = 
+			new LinkedHashMap<String, DiskUnit>(16, 0.75f, true);
 	private int capacity;     					// number of blocks of current disk instance
 	private int blockSize; 						// size of each block of current disk instance
 	private int numOfINodes;
+	private int tableINodes;					// I-Nodes in the table after block 0
+	private int iNodeChain;						// last block of I-Nodes added, 0 if none
+	private int[] iNodeBlocks;					// blocks of I-Nodes added, oldest first
+	private int numINodeBlocks;
 	private int firstFLB;
 	private int firstFLBPos;
 	private int firstFIN;
+	private int flags;
+	private int iNodeSize;
 	private String diskName;
+	private DiskStats stats;
+	private int freeBlocks;						// -1 until first counted
+	private int freeINodes;						// read from block 0, -1 if it wasn't there
+	private GrowableIntStack freeINodeStack;	// free I-Nodes, null until first used
+	private VirtualDiskBlock flbCache;			// contents of firstFLB, null until read
+	private boolean mounted;					// false while idle in the pool
+	private Reservation reservation;			// active reservation, if any
 	
 	
 	// the file representing the simulated  disk, where all the disk blocks are stored
@@ -40,6 +75,9 @@ public class DiskUnit {
 		try {
 			disk = new RandomAccessFile(FILEPATH + name, "rw");
 			diskName = name;
+			stats = new DiskStats();
+			freeBlocks = -1;
+			freeINodes = -1;
 		}
 		catch (IOException e) {
 			System.err.println ("Unable to start the disk");
@@ -50,17 +88,33 @@ public class DiskUnit {
 	/**
 	 * Turns on an existing disk unit whose name is given. If successful, it makes
 	 * the particular disk unit available for operations suitable for a disk unit.
+	 * A disk that was shut down recently is still open in the pool of disks and
+	 * is handed out again with its superblock and caches, without reading it.
+	 * A disk can't be mounted twice at once, since each unit keeps its own
+	 * free lists in memory.
 	 * @param name is the name of the disk unit to activate
 	 * @return the corresponding DiskUnit object
 	 * @throws NonExistingDiskException whenever no disk with the 
 	 * 		specified name is found.
+	 * @throws IllegalStateException whenever the disk is already mounted.
 	 **/
-	public static DiskUnit mount(String name) throws NonExistingDiskException {
+	public static DiskUnit mount(String name) throws NonExistingDiskException, IllegalStateException {
 		File file = new File(FILEPATH + name);
 		   if (!file.exists())
 		       throw new NonExistingDiskException("No disk has name : " + name);
+		   synchronized(pool) {
+			   DiskUnit pooled = pool.get(name);
+			   if(pooled != null && pooled.mounted)
+				   throw new IllegalStateException("Disk is already mounted: " + name);
+			   if(pooled != null) {
+				   pooled.mounted = true;
+				   pooled.stats.reset();
+				   return pooled;
+			   }
+		   }
 		  
 		   DiskUnit dUnit = new DiskUnit(name);
+		   dUnit.mounted = true;
 		   try {
 		  	   dUnit.disk.seek(0);
 		       dUnit.capacity = dUnit.disk.readInt();
@@ -69,13 +123,212 @@ public class DiskUnit {
 		       dUnit.firstFLBPos = dUnit.disk.readInt();
 		       dUnit.firstFIN = dUnit.disk.readInt();
 		       dUnit.numOfINodes = dUnit.disk.readInt();
+		       dUnit.flags = dUnit.disk.readInt();
+		       dUnit.iNodeChain = dUnit.disk.readInt();
+		       if((dUnit.flags & COUNTS_FLAG) != 0) {
+		      	 dUnit.freeBlocks = dUnit.disk.readInt();
+		      	 dUnit.freeINodes = dUnit.disk.readInt();
+		       }
+		       if((dUnit.flags & LONG_INODES_FLAG) != 0)
+		      	 dUnit.iNodeSize = INODE_SIZE;
+		       else
+		      	 dUnit.iNodeSize = LEGACY_INODE_SIZE;
 		   } catch (IOException e) {
 		  	 e.printStackTrace();
 		   }
-		   	
+		   dUnit.loadINodeBlocks();
+		   ArrayList<DiskUnit> idle;
+		   synchronized(pool) {
+			   //Another thread mounted the disk while it was being read;
+			   //its unit is the one handed out if it's idle
+			   if(pool.containsKey(name)) {
+				   idle = new ArrayList<DiskUnit>();
+				   idle.add(dUnit);
+				   dUnit = null;
+			   } else {
+				   pool.put(name, dUnit);
+				   idle = trimPool();
+			   }
+		   }
+		   closeAll(idle);
+		   if(dUnit == null)
+			   return mount(name);
 		   return dUnit;     	
 	}
 	
+	/**
+	 * Takes idle disks out of the pool, least recently mounted first,
+	 * 	until it's within MAX_OPEN_DISKS. Called holding the pool's lock;
+	 * 	the disks are closed afterwards with closeAll.
+	 * @return the disks taken out.
+	 */
+	private static ArrayList<DiskUnit> trimPool() {
+		ArrayList<DiskUnit> idle = new ArrayList<DiskUnit>();
+		Iterator<DiskUnit> it = pool.values().iterator();
+		int open = pool.size();
+		while(open > MAX_OPEN_DISKS && it.hasNext()) {
+			DiskUnit unit = it.next();
+			if(!unit.mounted) {
+				it.remove();
+				idle.add(unit);
+				open--;
+			}
+		}
+		return idle;
+	}
+	
+	/**
+	 * Closes the files of disks that are no longer in the pool.
+	 */
+	private static void closeAll(ArrayList<DiskUnit> units) {
+		if(units == null)
+			return;
+		for(DiskUnit unit : units) {
+			unit.close();
+		}
+	}
+	
+	/**
+	 * Copies this disk into a new disk with the given name. The new file
+	 * 	is created with the length of the disk and only the runs of blocks
+	 * 	that aren't in the free list are transferred into it, with
+	 * 	FileChannel.transferTo, so free space stays as holes where the file
+	 * 	system supports sparse files. Block 0 of the copy gets the current
+	 * 	state of this disk, even if it's mounted.
+	 * @param name name of the new disk.
+	 * @return number of blocks copied.
+	 * @throws ExistingDiskException whenever the name is already in use.
+	 * @throws IOException whenever either disk can't be accessed.
+	*/
+	public synchronized int cloneTo(String name) throws ExistingDiskException, IOException {
+		File file = new File(FILEPATH + name);
+		if (file.exists())
+			throw new ExistingDiskException("Disk name is already used: " + name);
+		evict(name);
+		
+		int copied = 0;
+		boolean success = false;
+		RandomAccessFile clone = new RandomAccessFile(file, "rw");
+		try {
+			BitSet free = this.getFreeBlocks();
+			clone.setLength((long) capacity * blockSize);
+			FileChannel source = disk.getChannel();
+			FileChannel target = clone.getChannel();
+			int first = free.nextClearBit(0);
+			while(first < capacity) {
+				int end = free.nextSetBit(first);
+				if(end < 0 || end > capacity)
+					end = capacity;
+				long pos = (long) first * blockSize;
+				long len = (long) (end - first) * blockSize;
+				long done = 0;
+				target.position(pos);
+				while(done < len) {
+					long n = source.transferTo(pos + done, len - done, target);
+					if(n <= 0)
+						throw new IOException("Unable to read from disk.");
+					done += n;
+				}
+				copied += end - first;
+				first = free.nextClearBit(end);
+			}
+			this.saveBlockZero(clone);
+			success = true;
+		} finally {
+			clone.close();
+			//A partial copy would keep the name from being used again
+			if(!success)
+				file.delete();
+		}
+		return copied;
+	}
+	
+	/**
+	 * Grows the disk to the given number of blocks. The file is extended,
+	 * 	which leaves the new blocks as holes where the file system supports
+	 * 	sparse files, and they're added to the free list in one pass, so
+	 * 	only the blocks that hold the list are written. Files, I-Nodes and
+	 * 	the free blocks the disk already had are left where they are.
+	 * @param newCapacity number of blocks of the disk after it grows.
+	 * @return number of blocks added.
+	 * @throws InvalidParameterException whenever newCapacity isn't a
+	 * 	power of 2 larger than the capacity of the disk, or the disk
+	 * 	would be larger than the blocks can be addressed in bytes.
+	 * @throws IOException whenever the disk can't be extended.
+	*/
+	public synchronized int resize(int newCapacity) 
+			throws InvalidParameterException, IOException {
+		if(newCapacity <= capacity || !Utils.powerOf2(newCapacity))
+			throw new InvalidParameterException("Invalid capacity = " + newCapacity 
+					+ ", the disk has " + capacity + " blocks");
+		if((long) newCapacity * blockSize > Integer.MAX_VALUE)
+			throw new InvalidParameterException("Invalid capacity = " + newCapacity 
+					+ ", the disk can't be larger than " + Integer.MAX_VALUE + " bytes");
+		
+		int oldCapacity = capacity;
+		disk.setLength((long) newCapacity * blockSize);
+		disk.seek(0);
+		disk.writeInt(newCapacity);
+		capacity = newCapacity;
+		this.registerFBRange(oldCapacity, newCapacity);
+		return newCapacity - oldCapacity;
+	}
+	
+	/**
+	 * Walks the free list once to find the blocks it holds. The blocks
+	 * 	that hold the list itself aren't included, since their contents 
+	 * 	are needed.
+	 * @return set with the free blocks.
+	*/
+	private BitSet getFreeBlocks() {
+		BitSet free = new BitSet(capacity);
+		VirtualDiskBlock vdb = new VirtualDiskBlock(blockSize);
+		int entries = firstFLBPos;
+		int bn = firstFLB;
+		while(bn != 0) {
+			this.read(bn, vdb);
+			for(int i = 1; i <= entries; i++) {
+				free.set(Utils.getIntFromBlock(vdb, i * 4));
+			}
+			bn = Utils.getIntFromBlock(vdb, 0);
+			entries = blockSize/4 - 1;
+		}
+		return free;
+	}
+	
+	/**
+	 * Takes a disk out of the pool, closing it if it's idle. Called 
+	 * 	before its file is deleted or replaced.
+	 * @param name name of the disk.
+	 */
+	private static void evict(String name) {
+		DiskUnit pooled;
+		synchronized(pool) {
+			pooled = pool.remove(name);
+		}
+		if(pooled != null && !pooled.mounted)
+			pooled.close();
+	}
+	
+	/**
+	 * Closes every disk of the pool that isn't mounted. Called when the
+	 * 	system shuts down.
+	 */
+	public static void closeIdleDisks() {
+		ArrayList<DiskUnit> idle = new ArrayList<DiskUnit>();
+		synchronized(pool) {
+			Iterator<DiskUnit> it = pool.values().iterator();
+			while(it.hasNext()) {
+				DiskUnit unit = it.next();
+				if(!unit.mounted) {
+					it.remove();
+					idle.add(unit);
+				}
+			}
+		}
+		closeAll(idle);
+	}
+	
 	/**
 	 * Creates a new disk unit with the given name. The disk is formatted
 	 * as having default capacity (number of blocks), each of default
@@ -104,20 +357,49 @@ public class DiskUnit {
 	*/
 	public static void createDiskUnit(String name, int capacity, int blockSize)
 			throws ExistingDiskException, InvalidParameterException {
+		createDiskUnit(name, capacity, blockSize, DEFAULT_BYTES_PER_INODE);
+	}
+	
+	/**
+	 * Creates a new disk unit with the given name, capacity and block
+	 * size, with one I-Node for every bytesPerINode bytes of the disk.
+	 * Disks for many small files need fewer bytes per I-Node; disks for
+	 * a few large files need more, leaving more blocks for data.
+	 * @param name the name of the file that is to represent the disk.
+	 * @param capacity number of blocks in the new disk
+	 * @param blockSize size per block in the new disk
+	 * @param bytesPerINode number of bytes of the disk per I-Node.
+	 * @throws ExistingDiskException whenever the name attempted is
+	 * already in use.
+	 * @throws InvalidParameterException whenever the values for capacity
+	 *  or blockSize are not valid according to the specifications, or the
+	 *  I-Nodes wouldn't leave a block for the root directory.
+	*/
+	public static void createDiskUnit(String name, int capacity, int blockSize, int bytesPerINode)
+			throws ExistingDiskException, InvalidParameterException {
 
 		File file=new File(FILEPATH + name);
 	    if (file.exists())
 	       throw new ExistingDiskException("Disk name is already used: " + name);
+	    evict(name);
 	   	
 	    RandomAccessFile disk = null;
 	    if (capacity < 0 || blockSize < 32 || !Utils.powerOf2(capacity) || !Utils.powerOf2(blockSize))
 	       throw new InvalidParameterException("Invalid values: " + " capacity = " 
 	    		   + capacity + " block size = " + blockSize);
+	    if (bytesPerINode <= 0)
+	    	throw new InvalidParameterException("Invalid bytes per I-Node = " + bytesPerINode);
+	    long nodes = Math.max(1, (long) capacity * blockSize / bytesPerINode);
+	    int nodesPerBlock = blockSize/INODE_SIZE;
+	    if ((nodes + nodesPerBlock - 1) / nodesPerBlock + 1 >= capacity)
+	    	throw new InvalidParameterException("Too many I-Nodes: " + nodes 
+	    			+ " I-Nodes don't fit in " + capacity + " blocks");
+	    int numOfINodes = (int) nodes;
 
 	    try {
 	        disk = new RandomAccessFile(FILEPATH + name, "rw");
-	        setUpBlockZero(disk, capacity, blockSize);
-	        setUpINodes(disk, capacity, blockSize);
+	        setUpBlockZero(disk, capacity, blockSize, numOfINodes);
+	        setUpINodes(disk, blockSize, numOfINodes);
 	        reserveDiskSpace(disk, capacity, blockSize);
 	    }
 	    catch (IOException e) {
@@ -135,9 +417,9 @@ public class DiskUnit {
 
 	    int temp = dUnit.firstFLB;
 	    dUnit.firstFLB = 0;
-	    for(int i = dUnit.capacity - 1; i >= temp; i--) {
-	    	dUnit.registerFB(i);
-	    }
+	    dUnit.freeBlocks = 0;
+	    dUnit.freeINodes = numOfINodes - 1;
+	    dUnit.registerFBRange(temp, dUnit.capacity);
 	    INode node = dUnit.getINode(0);
 	    node.setBlockIndex(dUnit.getFreeBN());
 	    node.setType((byte) 1); 
@@ -182,7 +464,7 @@ public class DiskUnit {
 	 * @throws InvalidBlockException whenever given block is empty 
 	 * or a different size.
 	*/
-	public void write(int blockNum, VirtualDiskBlock b) 
+	public synchronized void write(int blockNum, VirtualDiskBlock b) 
 			throws InvalidBlockNumberException, InvalidBlockException {
 		if(blockNum <= 0 || blockNum >= capacity)
 			throw new InvalidBlockNumberException("Invalid block index = " + blockNum);
@@ -190,6 +472,9 @@ public class DiskUnit {
 			throw new InvalidBlockException("Block is null.");
 		if(b.getCapacity() != blockSize)
 			throw new InvalidBlockException("Block is not the correct size");
+		BlockEvent event = new BlockEvent();
+		event.begin();
+		long start = System.nanoTime();
 		try {
 			//Go to the block location in the RAF
 			disk.seek(blockNum * blockSize);
@@ -200,6 +485,40 @@ public class DiskUnit {
 		} catch (IOException e) {
 			System.out.println("Unable to write to disk.");
 		}
+		stats.record(DiskStats.BLOCK_WRITE, System.nanoTime() - start);
+		event.finish(diskName, blockNum, 1, "write");
+	}
+
+	/**
+	 * Writes a run of consecutive blocks with a single transfer.
+	 * @param first the number of the first block that will be written.
+	 * @param count the number of blocks to write.
+	 * @param src array with the values that will be copied into disk.
+	 * @param off index in src of the first value to copy.
+	 * @throws InvalidBlockNumberException whenever a block of the run is
+	 * 0 or less or larger than the capacity.
+	 * @throws InvalidBlockException whenever src doesn't hold count 
+	 * blocks after off.
+	*/
+	public synchronized void writeBlocks(int first, int count, byte[] src, int off) 
+			throws InvalidBlockNumberException, InvalidBlockException {
+		if(first <= 0 || count < 0 || first + count > capacity)
+			throw new InvalidBlockNumberException("Invalid block run = " + first + "+" + count);
+		if(src == null || off < 0 || src.length - off < count * blockSize)
+			throw new InvalidBlockException("Array is smaller than the blocks written.");
+		if(count == 0)
+			return;
+		BlockEvent event = new BlockEvent();
+		event.begin();
+		long start = System.nanoTime();
+		try {
+			disk.seek((long) first * blockSize);
+			disk.write(src, off, count * blockSize);
+		} catch (IOException e) {
+			System.out.println("Unable to write to disk.");
+		}
+		stats.record(DiskStats.BLOCK_WRITE, count, System.nanoTime() - start);
+		event.finish(diskName, first, count, "write");
 	}
 
 	/**
@@ -212,7 +531,7 @@ public class DiskUnit {
 	 * @throws InvalidBlockException whenever given block is a different
 	 * size than blocks in disk.
 	*/
-	public void read(int blockNum, VirtualDiskBlock b) 
+	public synchronized void read(int blockNum, VirtualDiskBlock b) 
 			throws InvalidBlockNumberException, InvalidBlockException {
 		if(b == null)
 			throw new InvalidBlockException("Block is null.");
@@ -220,6 +539,9 @@ public class DiskUnit {
 			throw new InvalidBlockNumberException("Invalid block index = " + blockNum);
 		if(b.getCapacity() != blockSize)
 			throw new InvalidBlockException("Block is not the correct size");
+		BlockEvent event = new BlockEvent();
+		event.begin();
+		long start = System.nanoTime();
 		try {
 			//Go to the location of the block in the RAF
 			disk.seek(blockNum * blockSize);
@@ -230,6 +552,111 @@ public class DiskUnit {
 		} catch (IOException e) {
 			System.out.println("Unable to read from disk");
 		}
+		stats.record(DiskStats.BLOCK_READ, System.nanoTime() - start);
+		event.finish(diskName, blockNum, 1, "read");
+	}
+
+	/**
+	 * Reads a run of consecutive blocks with a single transfer.
+	 * @param first the number of the first block that will be read.
+	 * @param count the number of blocks to read.
+	 * @param dst array where the values will be copied to.
+	 * @param off index in dst where the first value is copied.
+	 * @throws InvalidBlockNumberException whenever a block of the run is
+	 * 0 or less or larger than the capacity.
+	 * @throws InvalidBlockException whenever dst can't hold count blocks
+	 * after off.
+	*/
+	public synchronized void readBlocks(int first, int count, byte[] dst, int off) 
+			throws InvalidBlockNumberException, InvalidBlockException {
+		if(first <= 0 || count < 0 || first + count > capacity)
+			throw new InvalidBlockNumberException("Invalid block run = " + first + "+" + count);
+		if(dst == null || off < 0 || dst.length - off < count * blockSize)
+			throw new InvalidBlockException("Array is smaller than the blocks read.");
+		if(count == 0)
+			return;
+		BlockEvent event = new BlockEvent();
+		event.begin();
+		long start = System.nanoTime();
+		try {
+			disk.seek((long) first * blockSize);
+			disk.readFully(dst, off, count * blockSize);
+		} catch (IOException e) {
+			System.out.println("Unable to read from disk");
+		}
+		stats.record(DiskStats.BLOCK_READ, count, System.nanoTime() - start);
+		event.finish(diskName, first, count, "read");
+	}
+	
+	/**
+	 * Copies bytes of consecutive blocks straight to a channel, letting
+	 * the operating system move them without copying them into the heap.
+	 * Positional transfers don't move the file pointer, so several can
+	 * run at once.
+	 * @param first the number of the first block of the run.
+	 * @param len the number of bytes to copy, from the start of the run.
+	 * @param target channel the bytes are written to.
+	 * @throws InvalidBlockNumberException whenever a block of the run is
+	 * 0 or less or larger than the capacity.
+	 * @throws IOException whenever the bytes can't be written.
+	*/
+	public void transferBlocks(int first, long len, WritableByteChannel target) 
+			throws InvalidBlockNumberException, IOException {
+		int count = (int) ((len + blockSize - 1) / blockSize);
+		if(first <= 0 || len < 0 || first + count > capacity)
+			throw new InvalidBlockNumberException("Invalid block run = " + first + "+" + count);
+		if(count == 0)
+			return;
+		BlockEvent event = new BlockEvent();
+		event.begin();
+		long start = System.nanoTime();
+		FileChannel channel = disk.getChannel();
+		long pos = (long) first * blockSize;
+		long done = 0;
+		while(done < len) {
+			long n = channel.transferTo(pos + done, len - done, target);
+			if(n <= 0)
+				throw new IOException("Unable to read from disk.");
+			done += n;
+		}
+		stats.record(DiskStats.BLOCK_READ, count, System.nanoTime() - start);
+		event.finish(diskName, first, count, "read");
+	}
+	
+	/**
+	 * Reads bytes of consecutive blocks into a buffer, which may be a 
+	 * direct buffer outside the heap. Like transferBlocks, it can run
+	 * at the same time as other positional transfers.
+	 * @param first the number of the first block of the run.
+	 * @param dst buffer that receives as many bytes as it has remaining,
+	 * from the start of the run.
+	 * @throws InvalidBlockNumberException whenever a block of the run is
+	 * 0 or less or larger than the capacity.
+	*/
+	public void readBlocks(int first, ByteBuffer dst) 
+			throws InvalidBlockNumberException {
+		int count = (dst.remaining() + blockSize - 1) / blockSize;
+		if(first <= 0 || first + count > capacity)
+			throw new InvalidBlockNumberException("Invalid block run = " + first + "+" + count);
+		if(count == 0)
+			return;
+		BlockEvent event = new BlockEvent();
+		event.begin();
+		long start = System.nanoTime();
+		FileChannel channel = disk.getChannel();
+		long pos = (long) first * blockSize;
+		try {
+			while(dst.hasRemaining()) {
+				int n = channel.read(dst, pos);
+				if(n < 0)
+					break;
+				pos += n;
+			}
+		} catch (IOException e) {
+			System.out.println("Unable to read from disk");
+		}
+		stats.record(DiskStats.BLOCK_READ, count, System.nanoTime() - start);
+		event.finish(diskName, first, count, "read");
 	}
 	
 	/**
@@ -255,6 +682,14 @@ public class DiskUnit {
 		return diskName;
 	}
 	
+	/**
+	 * @return the I/O statistics of this disk since it was mounted
+	 * 	or since they were last reset.
+	*/
+	public DiskStats getStats() {
+		return stats;
+	}
+	
 	/**
 	 * @return a nonnegative number representing the number of I-Nodes in the 
 	 * disk.
@@ -262,20 +697,222 @@ public class DiskUnit {
 	public int getNumOfINodes() {
 		return numOfINodes;
 	}
+	
+	/**
+	 * @return true if new files in this disk are created as extent-based
+	 * 	files, false if they use direct and indirect block indexes.
+	*/
+	public boolean usesExtents() {
+		return (flags & EXTENTS_FLAG) != 0;
+	}
+	
+	/**
+	 * @return true if the I-Nodes of this disk store the length of their
+	 * 	file, false for disks formatted with the older I-Node layout.
+	*/
+	public boolean storesLengths() {
+		return (flags & LONG_INODES_FLAG) != 0;
+	}
+	
+	/**
+	 * Sets the format of the files created from now on. Existing files
+	 * 	keep their format. Saved to block 0 when the disk is shut down.
+	 * @param extents true for extent-based files, false for indexed files.
+	*/
+	public synchronized void setUsesExtents(boolean extents) {
+		if(extents)
+			flags |= EXTENTS_FLAG;
+		else
+			flags &= ~EXTENTS_FLAG;
+	}
+	
+	/**
+	 * The count is read from block 0 when the disk is mounted. Disks 
+	 * that don't have it there get it by walking the free block list the
+	 * first time this is called. Afterwards the count is kept up to date 
+	 * by the allocator.
+	 * @return the number of free blocks in the disk.
+	*/
+	public synchronized int getFreeBlockCount() {
+		if(freeBlocks < 0) {
+			freeBlocks = 0;
+			if(firstFLB != 0) {
+				//Every block in the list after the first one is full.
+				freeBlocks = firstFLBPos + 1;
+				VirtualDiskBlock vdb = new VirtualDiskBlock(blockSize);
+				this.read(firstFLB, vdb);
+				int next = Utils.getIntFromBlock(vdb, 0);
+				while(next != 0) {
+					freeBlocks += blockSize/4;
+					this.read(next, vdb);
+					next = Utils.getIntFromBlock(vdb, 0);
+				}
+			}
+		}
+		return freeBlocks;
+	}
+	
+	/**
+	 * The count read from block 0 is used until the free I-Node list is
+	 * loaded; afterwards it's the size of the list.
+	 * @return the number of free I-Nodes in the disk.
+	*/
+	public synchronized int getFreeINodeCount() {
+		if(freeINodeStack == null && freeINodes >= 0)
+			return freeINodes;
+		this.loadFreeINodes();
+		return freeINodeStack.size();
+	}
 
 	/**
-	 * Retrieves a free I-Node from the list of free nodes.
-	 * @return The first I-Node in the list that is available.
+	 * Retrieves a free I-Node from the list of free nodes. The list is
+	 * kept in memory, so the I-Node isn't read. When the list is empty, 
+	 * a free block is turned into a block of new I-Nodes.
+	 * @return The first I-Node in the list that is available, cleared.
 	 * @throws FullDiskException when there are no available I-Nodes
+	 * 	nor blocks to hold new ones.
 	*/
-	public INode getFirstFreeINode() throws FullDiskException {
-		if(firstFIN == 0)
-			throw new FullDiskException("Disk is full, no more files can be added.");
-		INode node = this.getINode(firstFIN);
-		firstFIN = node.getBlockIndex();
+	public synchronized INode getFirstFreeINode() throws FullDiskException {
+		int reserved = reservation != null && reservation.isOwner() ? reservation.nextNode() : 0;
+		if(reserved != 0) {
+			INode node = new INode(reserved, 0, 0, INode.DATA_FILE);
+			node.setLength(0);
+			return node;
+		}
+		this.loadFreeINodes();
+		if(freeINodeStack.isEmpty())
+			this.addINodeBlock();
+		int index = freeINodeStack.pop();
+		firstFIN = freeINodeStack.isEmpty() ? 0 : freeINodeStack.top();
+		INode node = new INode(index, 0, 0, INode.DATA_FILE);
+		node.setLength(0);
 		return node;
 	}
+	
+	/**
+	 * Reads the free I-Node list into a stack the first time it's needed,
+	 * with its first I-Node on top. The links of the I-Nodes are taken 
+	 * from a sequential read of the table and of the blocks of I-Nodes
+	 * added later, and the list is then followed in memory. The links
+	 * on disk stay valid as the stack changes, since a released I-Node
+	 * is saved pointing to the one below it, so only the first one has
+	 * to be saved when the disk is shut down.
+	*/
+	private void loadFreeINodes() {
+		if(freeINodeStack != null)
+			return;
+		int[] next = new int[numOfINodes];
+		int nodesPerBlock = blockSize/iNodeSize;
+		int tableBlocks = (tableINodes + nodesPerBlock - 1)/nodesPerBlock;
+		int chunk = Math.min(tableBlocks, INODE_SCAN_BATCH);
+		byte[] data = new byte[chunk * blockSize];
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		for(int first = 0; first < tableBlocks; first += chunk) {
+			int count = Math.min(chunk, tableBlocks - first);
+			this.readBlocks(first + 1, count, data, 0);
+			for(int b = 0; b < count; b++) {
+				int base = (first + b) * nodesPerBlock;
+				for(int j = 0; j < nodesPerBlock && base + j < tableINodes; j++) {
+					next[base + j] = buffer.getInt(b * blockSize + j * iNodeSize);
+				}
+			}
+		}
+		nodesPerBlock = (blockSize - 4)/iNodeSize;
+		VirtualDiskBlock vdb = new VirtualDiskBlock(blockSize);
+		for(int b = 0; b < numINodeBlocks; b++) {
+			this.read(iNodeBlocks[b], vdb);
+			int base = tableINodes + b * nodesPerBlock;
+			for(int j = 0; j < nodesPerBlock; j++) {
+				next[base + j] = Utils.getIntFromBlock(vdb, 4 + j * iNodeSize);
+			}
+		}
+		
+		//Followed from the first I-Node and pushed from the last one
+		int n = 0;
+		int[] list = new int[numOfINodes];
+		int i = firstFIN;
+		while(i > 0 && i < numOfINodes && n < numOfINodes) {
+			list[n++] = i;
+			i = next[i];
+		}
+		freeINodeStack = new GrowableIntStack(n);
+		while(n > 0) {
+			freeINodeStack.push(list[--n]);
+		}
+	}
 
+	/**
+	 * Takes a free block for new I-Nodes and adds them to the free I-Node
+	 * list. The block begins with the number of the block of I-Nodes 
+	 * added before it, followed by the I-Nodes; its number is kept in
+	 * block 0 as the last one added. Blocks of I-Nodes are never freed.
+	 * @throws FullDiskException when there are no free blocks.
+	*/
+	private void addINodeBlock() throws FullDiskException {
+		if(firstFLB == 0)
+			throw new FullDiskException("Disk is full, no more files can be added.");
+		int bn = this.getFreeBN();
+		int nodesPerBlock = (blockSize - 4)/iNodeSize;
+		VirtualDiskBlock vdb = new VirtualDiskBlock(blockSize);
+		Utils.copyIntToBlock(vdb, 0, iNodeChain);
+		for(int j = 0; j < nodesPerBlock; j++) {
+			int next = j == nodesPerBlock - 1 ? firstFIN : numOfINodes + j + 1;
+			Utils.copyIntToBlock(vdb, 4 + j * iNodeSize, next);
+		}
+		this.write(bn, vdb);
+		
+		if(numINodeBlocks == iNodeBlocks.length)
+			iNodeBlocks = Arrays.copyOf(iNodeBlocks, numINodeBlocks * 2);
+		iNodeBlocks[numINodeBlocks++] = bn;
+		iNodeChain = bn;
+		for(int j = nodesPerBlock - 1; j >= 0; j--) {
+			freeINodeStack.push(numOfINodes + j);
+		}
+		firstFIN = numOfINodes;
+		numOfINodes += nodesPerBlock;
+	}
+	
+	/**
+	 * Reads the chain of blocks of I-Nodes added after the disk was 
+	 * created. Called when the disk is mounted, after block 0 is read.
+	*/
+	private void loadINodeBlocks() {
+		tableINodes = numOfINodes;
+		numINodeBlocks = 0;
+		iNodeBlocks = new int[4];
+		VirtualDiskBlock vdb = new VirtualDiskBlock(blockSize);
+		int bn = iNodeChain;
+		while(bn != 0) {
+			if(numINodeBlocks == iNodeBlocks.length)
+				iNodeBlocks = Arrays.copyOf(iNodeBlocks, numINodeBlocks * 2);
+			iNodeBlocks[numINodeBlocks++] = bn;
+			this.read(bn, vdb);
+			bn = Utils.getIntFromBlock(vdb, 0);
+		}
+		//The chain goes from the last block added to the first
+		for(int i = 0, j = numINodeBlocks - 1; i < j; i++, j--) {
+			int temp = iNodeBlocks[i];
+			iNodeBlocks[i] = iNodeBlocks[j];
+			iNodeBlocks[j] = temp;
+		}
+		numOfINodes += numINodeBlocks * ((blockSize - 4)/iNodeSize);
+	}
+	
+	/**
+	 * @param i index of an I-Node.
+	 * @return position in the disk of the I-Node, in its block of the
+	 * 	table or in a block of I-Nodes added later.
+	*/
+	private long getINodePosition(int i) {
+		if(i < tableINodes) {
+			int nodesPerBlock = blockSize/iNodeSize;
+			return (long) (i/nodesPerBlock + 1) * blockSize + (i % nodesPerBlock) * iNodeSize;
+		}
+		int nodesPerBlock = (blockSize - 4)/iNodeSize;
+		int j = i - tableINodes;
+		return (long) iNodeBlocks[j/nodesPerBlock] * blockSize + 4 + (j % nodesPerBlock) * iNodeSize;
+	}
+	
 	/**
 	 * Sets a new I-Node as a free I-Node in the disk.
 	 * @param node the I-Node to set as available.
@@ -283,16 +920,19 @@ public class DiskUnit {
 	 * 	root I-node or larger than the number of I-Nodes.
 	 * @throws InvalidParameterException whenever the node is null.
 	*/
-	public void setFirstFreeINode(INode node) 
+	public synchronized void setFirstFreeINode(INode node) 
 			throws InvalidIndexException, InvalidParameterException {
 		if(node == null)
 			throw new InvalidParameterException("I-Node is null");
 		if(node.getNodeIndex() < 1 || node.getNodeIndex() >= this.numOfINodes)
 			throw new InvalidIndexException("Invalid I-Node received");
+		this.loadFreeINodes();
 		node.setBlockIndex(firstFIN);
+		freeINodeStack.push(node.getNodeIndex());
 		firstFIN = node.getNodeIndex();
 		node.setSize(0);
 		node.setType((byte) 0);
+		node.setLength(0);
 		this.saveINode(node);
 	}
 	
@@ -300,7 +940,7 @@ public class DiskUnit {
 	 * Formats the data in the disk by setting all blocks, except the first
 	 * one, to zero.
 	*/
-	public void lowLevelFormat() {
+	public synchronized void lowLevelFormat() {
 		try {
 			for(int j = blockSize; j < capacity * blockSize; j++) {
 				disk.seek(j);
@@ -310,19 +950,65 @@ public class DiskUnit {
 			System.err.println ("Unable to format disk");
 			System.exit(1);
 		}
+		flbCache = null;
+		freeINodeStack = null;
 	}
 
-	/** Simulates shutting-off the disk. Just closes the corresponding RAF. 
+	/** Simulates shutting-off the disk. Saves block 0 and leaves the disk
+	 *  idle in the pool, so mounting it again is cheap; the RAF is closed
+	 *  when the pool needs room or if the disk isn't in the pool. 
 	 *  Called when no more operations will be made on the disk. 
 	 **/
 	public void shutdown() {
+		synchronized(this) {
+			try {
+				this.saveBlockZero(disk);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			mounted = false;
+		}
+		ArrayList<DiskUnit> idle;
+		synchronized(pool) {
+			if(pool.get(diskName) == this)
+				idle = trimPool();
+			else {
+				idle = new ArrayList<DiskUnit>();
+				idle.add(this);
+			}
+		}
+		closeAll(idle);
+	}
+	
+	/**
+	 * Writes the state of the disk kept in memory into block 0 of the 
+	 * given file. The number of free blocks and of free I-Nodes is saved
+	 * too when the block has room for it, so it isn't counted again the
+	 * next time the disk is mounted.
+	 * @param raf file of this disk or of a copy of it.
+	 * @throws IOException whenever the file can't be written.
+	 */
+	private void saveBlockZero(RandomAccessFile raf) throws IOException {
+		if(blockSize >= 40)
+			flags |= COUNTS_FLAG;
+		raf.seek(8);
+		raf.writeInt(firstFLB);
+		raf.writeInt(firstFLBPos);
+		raf.writeInt(firstFIN);
+		raf.seek(24);
+		raf.writeInt(flags);
+		raf.writeInt(iNodeChain);
+		if((flags & COUNTS_FLAG) != 0) {
+			raf.writeInt(this.getFreeBlockCount());
+			raf.writeInt(this.getFreeINodeCount());
+		}
+	}
+	
+	/**
+	 * Closes the RAF of a disk that was shut down.
+	 */
+	private synchronized void close() {
 		try {
-			disk.seek(8);
-			disk.writeInt(firstFLB);
-			disk.seek(12);
-			disk.writeInt(firstFLBPos);
-			disk.seek(16);
-			disk.writeInt(firstFIN);
 			disk.close();
 			diskName = null;
 		} catch (IOException e) {
@@ -335,6 +1021,7 @@ public class DiskUnit {
 	 * @param name name of the file (disk) that wants to be deleted.
 	 **/
 	public static void deleteDisk(String name) {
+		evict(name);
 		File raf = new File(FILEPATH + name);
 		raf.delete();
 	}
@@ -344,15 +1031,13 @@ public class DiskUnit {
 	 * @param disk the RAF of the corresponding disk
 	 * @param cap capacity of the disk
 	 * @param bSize block size of the disk.
+	 * @param numOfINodes number of I-Nodes of the disk.
 	*/
-	private static void setUpBlockZero(RandomAccessFile disk, int cap, int bSize) {
+	private static void setUpBlockZero(RandomAccessFile disk, int cap, int bSize, int numOfINodes) {
 		
 		int firstFreeINode = 0;
-		int numOfINodes = (int) (cap * bSize * 0.01);
-		if(numOfINodes < 1)
-			numOfINodes = 1;
-		int firstFLB = numOfINodes/(bSize/9) + 1;
-		if(numOfINodes%(bSize/9) != 0)
+		int firstFLB = numOfINodes/(bSize/INODE_SIZE) + 1;
+		if(numOfINodes%(bSize/INODE_SIZE) != 0)
 			firstFLB++;
 		if(numOfINodes > 1)
 			firstFreeINode = 1;
@@ -365,14 +1050,14 @@ public class DiskUnit {
 			disk.writeInt(0);
 			disk.writeInt(firstFreeINode);
 			disk.writeInt(numOfINodes);
+			disk.writeInt(LONG_INODES_FLAG);
 			
 			//Set up root directory I-Node
 			disk.seek(bSize);
 			disk.writeInt(0);
 			disk.writeInt(0);
 			disk.writeByte(1);
-			disk.writeInt(2);
-			disk.writeInt(0);
+			disk.writeLong(0);
 		} catch (IOException e) {
 			System.out.println("Unable to write to block 0.");
 		}
@@ -381,36 +1066,32 @@ public class DiskUnit {
 
 	/**
 	 * Sets up and initializes the I-Nodes of the corresponding disk.
+	 * Every I-Node but the root one is linked to the next, and the last 
+	 * one ends the list. Each block of the table is written at once.
 	 * @param disk the RAF of the corresponding disk
-	 * @param capacity capacity of the disk
 	 * @param blockSize size of blocks of the disk.
+	 * @param numINodes number of I-Nodes of the disk.
 	*/
-	private static void setUpINodes(RandomAccessFile disk, int capacity, int blockSize) {
-		int index = 2;
-		int numINodes = (int) (capacity * blockSize * .01);
-		int numBlocks = numINodes/(blockSize/9) + 1;
-		if(numINodes%(blockSize/9) != 0)
-			numBlocks++;
-		int nodesPerBlock = blockSize/9;
+	private static void setUpINodes(RandomAccessFile disk, int blockSize, int numINodes) {
+		int nodesPerBlock = blockSize/INODE_SIZE;
+		byte[] block = new byte[blockSize];
+		ByteBuffer buffer = ByteBuffer.wrap(block);
 		
-		for(int i = 1; i <= numBlocks; i++) {
-			for(int j = 0; j < nodesPerBlock; j++) {
-				if((i != 1 || j != 0) && (index != 1)) {
-					try {
-						disk.seek((i * blockSize) + (j * 9));
-						disk.writeInt(index);
-						disk.seek((i * blockSize) + (j * 9) + 4);
-						disk.writeInt(0);
-						
-						if(index == numINodes - 1)
-							index = 0;
-						else
-							index++;
-					} catch (IOException e) {
-						System.out.println("Unable to set up I-Nodes.");
-					}
+		try {
+			for(int first = 0; first < numINodes; first += nodesPerBlock) {
+				Arrays.fill(block, (byte) 0);
+				for(int j = 0; j < nodesPerBlock && first + j < numINodes; j++) {
+					int index = first + j;
+					if(index != 0)
+						buffer.putInt(j * INODE_SIZE, index == numINodes - 1 ? 0 : index + 1);
 				}
+				//The root I-Node was written with block 0
+				int from = first == 0 ? INODE_SIZE : 0;
+				disk.seek((long) (first/nodesPerBlock + 1) * blockSize + from);
+				disk.write(block, from, blockSize - from);
 			}
+		} catch (IOException e) {
+			System.out.println("Unable to set up I-Nodes.");
 		}
 	}
 	
@@ -420,20 +1101,27 @@ public class DiskUnit {
 	 * @throws InvalidIndexException whenever the index given is
 	 * 	not that of a valid I-Node.
 	*/
-	public INode getINode(int i) throws InvalidIndexException {
+	public synchronized INode getINode(int i) throws InvalidIndexException {
 		if( i < 0 || i >= numOfINodes) 
 			throw new InvalidIndexException("Invalid I-Node index = " + i);
-		int nodesPerBlock = blockSize/9;
-		int blockIndex = (i % nodesPerBlock);
-		int blockNum = i/nodesPerBlock + 1;
 
 		INode node = null;
+		INodeEvent event = new INodeEvent();
+		event.begin();
+		long start = System.nanoTime();
 		try {
-			disk.seek(blockNum * blockSize + blockIndex * 9);
+			disk.seek(this.getINodePosition(i));
 			node = new INode(i, disk.readInt(), disk.readInt(),disk.readByte());
+			//Length is unknown in disks created before it was stored
+			if(iNodeSize == INODE_SIZE)
+				node.setLength(disk.readLong());
+			else
+				node.setLength(-1);
 		} catch (IOException e) {
 			System.out.println("Unable to read INode from disk.");
 		}
+		stats.record(DiskStats.INODE_READ, System.nanoTime() - start);
+		event.finish(diskName, i, "read");
 		return node;
 	}
 	
@@ -444,37 +1132,51 @@ public class DiskUnit {
 	 * 	possible range of I-Nodes.
 	 * @throws InvalidParameterException whenever I-node is null.
 	*/
-	public void saveINode(INode node) 
+	public synchronized void saveINode(INode node) 
 			throws InvalidIndexException, InvalidParameterException {
 		if(node == null)
 			throw new InvalidParameterException("I-Node is null.");
 		if(node.getNodeIndex() < 0 || node.getNodeIndex() >= numOfINodes) 
 			throw new InvalidIndexException("Invalid I-Node number = " + node.getNodeIndex());
 		
-		int nodesPerBlock = blockSize/9;
-		int blockIndex = (node.getNodeIndex() % nodesPerBlock);
-		int blockNum = node.getNodeIndex()/nodesPerBlock + 1;
+		INodeEvent event = new INodeEvent();
+		event.begin();
+		long start = System.nanoTime();
 		try {
-			disk.seek(blockNum * blockSize + blockIndex * 9);
+			disk.seek(this.getINodePosition(node.getNodeIndex()));
 			disk.writeInt(node.getBlockIndex()); 
 			disk.writeInt(node.getSize());
 			disk.writeByte(node.getType());
+			if(iNodeSize == INODE_SIZE)
+				disk.writeLong(Math.max(0, node.getLength()));
 		} catch (IOException e) {
 			System.out.println("Unable to read INode from disk.");
 		}
+		stats.record(DiskStats.INODE_SAVE, System.nanoTime() - start);
+		event.finish(diskName, node.getNodeIndex(), "save");
 	}
 
 	/**
 	 * @return the index of the next available free block in the disk.
 	 * @throws FullDiskException when there are no free blocks.
 	*/
-	public int getFreeBN() throws FullDiskException { 
-		   int bn; 
+	public synchronized int getFreeBN() throws FullDiskException { 
+		   int bn = reservation != null && reservation.isOwner() ? reservation.nextBlock() : 0; 
+		   if (bn != 0)
+			   return bn;
 		   if (firstFLB == 0) 
 		      throw new FullDiskException("Disk is full.");
 		   
-		   VirtualDiskBlock vdb = new VirtualDiskBlock(blockSize);
-		   this.read(firstFLB, vdb);
+		   AllocationEvent event = new AllocationEvent();
+		   event.begin();
+		   long start = System.nanoTime();
+		   //The first block of the free list is kept in memory, so a
+		   //run of allocations reads it only once.
+		   if (flbCache == null) {
+			   flbCache = new VirtualDiskBlock(blockSize);
+			   this.read(firstFLB, flbCache);
+		   }
+		   VirtualDiskBlock vdb = flbCache;
 		   
 		   if (firstFLBPos != 0) { 
 			  bn = Utils.getIntFromBlock(vdb, firstFLBPos * 4);
@@ -484,7 +1186,15 @@ public class DiskUnit {
 		      bn = firstFLB; 
 		      firstFLB = Utils.getIntFromBlock(vdb, 0);  
 		      firstFLBPos = (blockSize/4) - 1;               
+		      flbCache = null;
 		   } 
+		   if(freeBlocks > 0)
+			   freeBlocks--;
+		   stats.record(DiskStats.BLOCK_ALLOC, System.nanoTime() - start);
+		   event.finish(diskName, bn, "alloc");
+		   //Once the reservation runs out, cancel() must still return it
+		   if(reservation != null && reservation.isOwner())
+			   reservation.track(bn);
 		   return bn;     
 		}
 	
@@ -493,10 +1203,15 @@ public class DiskUnit {
 	 * @throws InvalidIndexException whenever the index is not of a
 	 * 	block in the disk.
 	*/
-	public void registerFB(int bn) throws InvalidIndexException { 
+	public synchronized void registerFB(int bn) throws InvalidIndexException { 
 		if(bn <= 0 || bn >= capacity)
 			throw new InvalidIndexException("registerFB: Index of block is invalid = " + bn);
+		if(reservation != null && reservation.isOwner() && reservation.giveBack(bn))
+			return;
 		
+		AllocationEvent event = new AllocationEvent();
+		event.begin();
+		long start = System.nanoTime();
 		VirtualDiskBlock vdb = new VirtualDiskBlock(blockSize);
 		if (firstFLB == 0)  { 
 			firstFLB = bn; 
@@ -509,22 +1224,250 @@ public class DiskUnit {
 			firstFLB = bn; 
 			this.write(firstFLB, vdb);
 		}  else { 
-			this.read(firstFLB, vdb);
+			if (flbCache != null)
+				vdb = flbCache;
+			else
+				this.read(firstFLB, vdb);
 			firstFLBPos++; 
 			Utils.copyIntToBlock(vdb, firstFLBPos * 4, bn);
 			this.write(firstFLB, vdb);
 		} 
+		flbCache = vdb;
+		if(freeBlocks >= 0)
+			freeBlocks++;
+		stats.record(DiskStats.BLOCK_FREE, System.nanoTime() - start);
+		event.finish(diskName, bn, "free");
+	}     
+	
+	/**
+	 * Sets several blocks as available at once. The blocks enter the free
+	 * 	list in the same order as if registerFB had been called for each
+	 * 	one, but every block of the list that changes is written only once
+	 * 	and the freed blocks themselves are not cleared.
+	 * @param blocks indexes of the blocks.
+	 * @param count number of blocks of the array to free, from the first.
+	 * @throws InvalidIndexException whenever an index is not of a
+	 * 	block in the disk.
+	*/
+	public synchronized void registerFBs(int[] blocks, int count) throws InvalidIndexException { 
+		for(int i = 0; i < count; i++) {
+			if(blocks[i] <= 0 || blocks[i] >= capacity)
+				throw new InvalidIndexException("registerFBs: Index of block is invalid = " + blocks[i]);
+		}
+		if(reservation != null && reservation.isOwner()) {
+			//Reserved blocks go back to the reservation
+			int[] kept = new int[count];
+			int n = 0;
+			for(int i = 0; i < count; i++) {
+				if(!reservation.giveBack(blocks[i]))
+					kept[n++] = blocks[i];
+			}
+			blocks = kept;
+			count = n;
+		}
+		if(count == 0)
+			return;
+		
+		AllocationEvent event = new AllocationEvent();
+		event.begin();
+		long start = System.nanoTime();
+		VirtualDiskBlock vdb = flbCache;
+		if (firstFLB != 0 && vdb == null) {
+			vdb = new VirtualDiskBlock(blockSize);
+			this.read(firstFLB, vdb);
+		}
+		boolean dirty = false;
+		for(int i = 0; i < count; i++) {
+			if (firstFLB == 0 || firstFLBPos == (blockSize/4) - 1) {
+				//The block becomes the head of the list, linking to the old one
+				if (dirty)
+					this.write(firstFLB, vdb);
+				vdb = new VirtualDiskBlock(blockSize);
+				Utils.copyIntToBlock(vdb, 0, firstFLB);
+				firstFLB = blocks[i];
+				firstFLBPos = 0;
+			}  else { 
+				firstFLBPos++; 
+				Utils.copyIntToBlock(vdb, firstFLBPos * 4, blocks[i]);
+			}
+			dirty = true;
+		}
+		this.write(firstFLB, vdb);
+		flbCache = vdb;
+		if(freeBlocks >= 0)
+			freeBlocks += count;
+		stats.record(DiskStats.BLOCK_FREE, count, System.nanoTime() - start);
+		event.finish(diskName, blocks[0], count, "free");
 	}     
 	
+	/**
+	 * Sets a range of blocks as available, from the last one down, so the
+	 * 	allocator hands them out in ascending order. The blocks are freed 
+	 * 	in batches with registerFBs.
+	 * @param first index of the first block of the range.
+	 * @param end index after the last block of the range.
+	 * @throws InvalidIndexException whenever the range isn't inside the disk.
+	*/
+	private void registerFBRange(int first, int end) throws InvalidIndexException {
+		int[] blocks = new int[Math.max(0, Math.min(end - first, FREE_BATCH))];
+		int bn = end - 1;
+		while(bn >= first) {
+			int count = 0;
+			while(count < blocks.length && bn >= first) {
+				blocks[count++] = bn--;
+			}
+			this.registerFBs(blocks, count);
+		}
+	}
+	
+	/**
+	 * Takes the given number of blocks and I-Nodes out of the free lists
+	 * at once, for an operation that needs them. Until the reservation
+	 * ends, the blocks and I-Nodes the current thread asks for are handed
+	 * out from it. Only one reservation is active at a time; a thread that
+	 * asks for another waits until it ends.
+	 * @param blocks number of blocks to reserve.
+	 * @param nodes number of I-Nodes to reserve.
+	 * @return the active reservation.
+	 * @throws FullDiskException whenever the disk doesn't have room for
+	 * 	all of them; nothing is reserved then.
+	 * @throws IllegalStateException whenever the current thread already has
+	 * 	an active reservation, or is interrupted while waiting for one.
+	 * @throws InvalidParameterException whenever a number is negative.
+	*/
+	public synchronized Reservation reserve(int blocks, int nodes) 
+			throws FullDiskException, IllegalStateException, InvalidParameterException {
+		if(blocks < 0 || nodes < 0)
+			throw new InvalidParameterException("Invalid reservation = " + blocks + " blocks, " 
+					+ nodes + " I-Nodes");
+		while(reservation != null) {
+			if(reservation.isOwner())
+				throw new IllegalStateException("Another reservation is active.");
+			try {
+				this.wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for a reservation.");
+			}
+		}
+		if(!this.checkIfEnoughSpace(blocks, nodes))
+			throw new FullDiskException("Disk is full: " + blocks + " blocks and " + nodes 
+					+ " I-Nodes are needed.");
+		
+		//I-Nodes first, since adding them may take blocks
+		int[] reservedNodes = new int[nodes];
+		int[] reservedBlocks = new int[blocks];
+		int taken = 0;
+		this.loadFreeINodes();
+		try {
+			while(taken < nodes) {
+				if(freeINodeStack.isEmpty())
+					this.addINodeBlock();
+				reservedNodes[taken++] = freeINodeStack.pop();
+			}
+			firstFIN = freeINodeStack.isEmpty() ? 0 : freeINodeStack.top();
+			this.takeFreeBNs(reservedBlocks);
+		} catch (FullDiskException e) {
+			//The counts were off; the I-Nodes go back in the order they were taken
+			firstFIN = freeINodeStack.isEmpty() ? 0 : freeINodeStack.top();
+			for(int i = taken - 1; i >= 0; i--) {
+				this.setFirstFreeINode(new INode(reservedNodes[i], 0, 0, INode.DATA_FILE));
+			}
+			throw e;
+		}
+		reservation = new Reservation(this, reservedBlocks, reservedNodes);
+		return reservation;
+	}
+	
+	/**
+	 * Ends the active reservation, returning its blocks and I-Nodes to 
+	 * the free lists, and wakes the threads waiting to reserve. Called by
+	 * the reservation.
+	 * @param r reservation that ends.
+	 * @param cancel whether the blocks and I-Nodes handed out are 
+	 * 	returned too.
+	 * @throws IllegalStateException whenever r isn't the active reservation.
+	*/
+	synchronized void endReservation(Reservation r, boolean cancel) throws IllegalStateException {
+		if(reservation != r)
+			throw new IllegalStateException("The reservation already ended.");
+		reservation = null;
+		int[] blocks = r.getBlocksToReturn(cancel);
+		this.registerFBs(blocks, blocks.length);
+		for(int index : r.getNodesToReturn(cancel)) {
+			this.setFirstFreeINode(new INode(index, 0, 0, INode.DATA_FILE));
+		}
+		this.notifyAll();
+	}
+	
+	/**
+	 * Takes blocks from the free list in the order getFreeBN would hand
+	 * them out, reading each block of the list once.
+	 * @param dst array filled with the numbers of the blocks.
+	 * @throws FullDiskException when there are not enough free blocks;
+	 * 	the blocks already taken are given back first.
+	*/
+	private void takeFreeBNs(int[] dst) throws FullDiskException {
+		if(dst.length == 0)
+			return;
+		AllocationEvent event = new AllocationEvent();
+		event.begin();
+		long start = System.nanoTime();
+		int n = 0;
+		while(n < dst.length) {
+			if (firstFLB == 0) {
+				int[] taken = new int[n];
+				for(int i = 0; i < n; i++) {
+					taken[i] = dst[n - 1 - i];
+				}
+				//The list is empty, so the count is exact once they're back
+				freeBlocks = 0;
+				this.registerFBs(taken, n);
+				throw new FullDiskException("Disk is full.");
+			}
+			if (flbCache == null) {
+				flbCache = new VirtualDiskBlock(blockSize);
+				this.read(firstFLB, flbCache);
+			}
+			while(n < dst.length && firstFLBPos != 0) {
+				dst[n++] = Utils.getIntFromBlock(flbCache, firstFLBPos * 4);
+				firstFLBPos--;
+			}
+			if(n < dst.length) {
+				dst[n++] = firstFLB;
+				firstFLB = Utils.getIntFromBlock(flbCache, 0);
+				firstFLBPos = (blockSize/4) - 1;
+				flbCache = null;
+			}
+		}
+		if(freeBlocks >= 0)
+			freeBlocks = Math.max(0, freeBlocks - dst.length);
+		stats.record(DiskStats.BLOCK_ALLOC, dst.length, System.nanoTime() - start);
+		event.finish(diskName, dst[0], dst.length, "alloc");
+	}
+	
 	/**
 	 * @param size the required number of blocks in the disk
 	 * @return if there is enough space in disk or not.
 	*/
 	public boolean checkIfEnoughSpace(int size) {
-		INode node = this.getINode(0);
-		if(size > this.getCapacity() - node.getSize())
-			return false;
-		else
-			return true;
+		return this.checkIfEnoughSpace(size, 0);
+	}
+	
+	/**
+	 * Checks against the free block and I-Node counts, without reading
+	 * the disk once they're known. I-Nodes missing from the free list 
+	 * count as the blocks needed to add them.
+	 * @param blocks the required number of blocks in the disk
+	 * @param nodes the required number of I-Nodes in the disk
+	 * @return if there is enough space in disk or not.
+	*/
+	public synchronized boolean checkIfEnoughSpace(long blocks, int nodes) {
+		int missing = nodes - this.getFreeINodeCount();
+		if(missing > 0) {
+			int nodesPerBlock = (blockSize - 4)/iNodeSize;
+			blocks += (missing + nodesPerBlock - 1)/nodesPerBlock;
+		}
+		return blocks <= this.getFreeBlockCount();
 	}
 }
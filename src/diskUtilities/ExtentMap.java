@@ -0,0 +1,359 @@
+package diskUtilities;
+
+import java.util.Arrays;
+
+import exceptions.FullFileException;
+import exceptions.InvalidBlockNumberException;
+
+/**
+ * Block map of an extent-based data file. Instead of one pointer per data
+ * block, the file is described by runs of consecutive disk blocks (extents),
+ * each stored as its first block and its number of blocks.
+ *
+ * The root block begins with a header holding the number of entries, the
+ * depth of the map, the number of data blocks and the length of the file
+ * in bytes. With depth 0 the entries that follow are the extents themselves.
+ * When they no longer fit in the root, the extents move to leaf blocks and
+ * the root entries become (first logical block, leaf block) pairs. A leaf
+ * block holds its number of extents followed by the extents.
+ */
+public class ExtentMap {
+
+	private static final int HEADER = 16;
+	private static final int LEAF_HEADER = 4;
+	private static final int ENTRY = 8;
+
+	private DiskUnit disk;
+	private int bSize;
+	private int rootBlock;
+	private int length;
+	private int numBlocks;
+	private int numExtents;
+	private int[] starts;		// first disk block of each extent
+	private int[] lengths;		// number of blocks of each extent
+	private int[] offsets;		// logical block where each extent begins
+	private int[] leaves;		// leaf blocks, only used with depth 1
+	private int numLeaves;
+	private int dirtyFrom;		// first extent that changed since the last save
+
+	/**
+	 * Creates an empty map for a file in the given disk.
+	 * @param disk diskUnit where the file is in.
+	 */
+	public ExtentMap(DiskUnit disk) {
+		this.disk = disk;
+		bSize = disk.getBlockSize();
+		starts = new int[4];
+		lengths = new int[4];
+		offsets = new int[4];
+		leaves = new int[(bSize - HEADER) / ENTRY];
+	}
+
+	/**
+	 * Allocates the root block of a new empty file and saves it.
+	 * @throws FullDiskException whenever there are no free blocks.
+	 */
+	public void create() {
+		rootBlock = disk.getFreeBN();
+		length = 0;
+		numBlocks = 0;
+		numExtents = 0;
+		numLeaves = 0;
+		dirtyFrom = 0;
+		this.save();
+	}
+
+	/**
+	 * Reads the map of an existing file.
+	 * @param root index of the file's root block.
+	 */
+	public void load(int root) {
+		rootBlock = root;
+		VirtualDiskBlock vdb = new VirtualDiskBlock(bSize);
+		disk.read(rootBlock, vdb);
+		int entries = Utils.getIntFromBlock(vdb, 0);
+		int depth = Utils.getIntFromBlock(vdb, 4);
+		numBlocks = Utils.getIntFromBlock(vdb, 8);
+		length = Utils.getIntFromBlock(vdb, 12);
+		numExtents = 0;
+		numLeaves = 0;
+
+		if(depth == 0) {
+			for(int i = 0; i < entries; i++) {
+				this.addExtent(Utils.getIntFromBlock(vdb, HEADER + i * ENTRY),
+						Utils.getIntFromBlock(vdb, HEADER + i * ENTRY + 4));
+			}
+		} else {
+			for(int i = 0; i < entries; i++) {
+				leaves[numLeaves++] = Utils.getIntFromBlock(vdb, HEADER + i * ENTRY + 4);
+			}
+			VirtualDiskBlock leaf = new VirtualDiskBlock(bSize);
+			for(int l = 0; l < numLeaves; l++) {
+				disk.read(leaves[l], leaf);
+				int count = Utils.getIntFromBlock(leaf, 0);
+				for(int i = 0; i < count; i++) {
+					this.addExtent(Utils.getIntFromBlock(leaf, LEAF_HEADER + i * ENTRY),
+							Utils.getIntFromBlock(leaf, LEAF_HEADER + i * ENTRY + 4));
+				}
+			}
+		}
+		dirtyFrom = numExtents;
+	}
+
+	/**
+	 * Allocates blocks at the end of the file. A block that follows the
+	 * last block of the file on disk extends the last extent instead of
+	 * starting a new one. Changes are kept in memory until save() is called.
+	 * @param n number of blocks to add.
+	 * @throws FullDiskException whenever there are no free blocks.
+	 * @throws FullFileException whenever the file can't hold more extents.
+	 */
+	public void addBlocks(int n) throws FullFileException {
+		for(int i = 0; i < n; i++) {
+			int bn = disk.getFreeBN();
+			int last = numExtents - 1;
+			if(last >= 0 && starts[last] + lengths[last] == bn) {
+				lengths[last]++;
+				dirtyFrom = Math.min(dirtyFrom, last);
+			} else if(numExtents < this.getMaxExtents()) {
+				this.addExtent(bn, 1);
+				dirtyFrom = Math.min(dirtyFrom, last + 1);
+			} else {
+				disk.registerFB(bn);
+				throw new FullFileException("File has too many fragments.");
+			}
+			numBlocks++;
+		}
+	}
+
+	/**
+	 * Frees the blocks past the given number of blocks, last to first.
+	 * 	Extents left empty are removed. Changes are kept in memory until
+	 * 	save() is called, which also frees leaf blocks no longer needed.
+	 * @param blocks number of data blocks the file keeps.
+	 */
+	public void truncate(int blocks) {
+		while(numBlocks > blocks) {
+			int last = numExtents - 1;
+			int keep = Math.max(0, blocks - offsets[last]);
+			for(int b = starts[last] + lengths[last] - 1; b >= starts[last] + keep; b--) {
+				disk.registerFB(b);
+			}
+			numBlocks -= lengths[last] - keep;
+			if(keep == 0)
+				numExtents--;
+			else
+				lengths[last] = keep;
+		}
+		dirtyFrom = Math.min(dirtyFrom, Math.max(0, numExtents - 1));
+	}
+
+	/**
+	 * Frees every block of the file, including the root block. Blocks are
+	 * released last to first so the allocator hands them out again in
+	 * ascending order.
+	 */
+	public void delete() {
+		for(int i = numExtents - 1; i >= 0; i--) {
+			for(int b = starts[i] + lengths[i] - 1; b >= starts[i]; b--) {
+				disk.registerFB(b);
+			}
+		}
+		for(int l = numLeaves - 1; l >= 0; l--) {
+			disk.registerFB(leaves[l]);
+		}
+		disk.registerFB(rootBlock);
+		numExtents = 0;
+		numBlocks = 0;
+		numLeaves = 0;
+		length = 0;
+	}
+
+	/**
+	 * Lists every block of the file in the order delete() frees them,
+	 * 	without changing the map.
+	 * @return data blocks, leaf blocks and the root block.
+	 */
+	public int[] getAllBlocks() {
+		int[] blocks = new int[numBlocks + numLeaves + 1];
+		int n = 0;
+		for(int i = numExtents - 1; i >= 0; i--) {
+			for(int b = starts[i] + lengths[i] - 1; b >= starts[i]; b--) {
+				blocks[n++] = b;
+			}
+		}
+		for(int l = numLeaves - 1; l >= 0; l--) {
+			blocks[n++] = leaves[l];
+		}
+		blocks[n] = rootBlock;
+		return blocks;
+	}
+
+	/**
+	 * Writes the root block and the leaf blocks that changed since the
+	 * last save, converting between depth 0 and 1 when needed.
+	 * @throws FullDiskException whenever a new leaf block can't be allocated.
+	 */
+	public void save() {
+		int rootEntries = (bSize - HEADER) / ENTRY;
+		int leafEntries = (bSize - LEAF_HEADER) / ENTRY;
+		VirtualDiskBlock root = new VirtualDiskBlock(bSize);
+		Utils.copyIntToBlock(root, 8, numBlocks);
+		Utils.copyIntToBlock(root, 12, length);
+
+		if(numExtents <= rootEntries) {
+			while(numLeaves > 0) {
+				disk.registerFB(leaves[--numLeaves]);
+			}
+			Utils.copyIntToBlock(root, 0, numExtents);
+			Utils.copyIntToBlock(root, 4, 0);
+			for(int i = 0; i < numExtents; i++) {
+				Utils.copyIntToBlock(root, HEADER + i * ENTRY, starts[i]);
+				Utils.copyIntToBlock(root, HEADER + i * ENTRY + 4, lengths[i]);
+			}
+		} else {
+			int needed = (numExtents + leafEntries - 1) / leafEntries;
+			while(numLeaves < needed) {
+				leaves[numLeaves++] = disk.getFreeBN();
+				dirtyFrom = Math.min(dirtyFrom, (numLeaves - 1) * leafEntries);
+			}
+			while(numLeaves > needed) {
+				disk.registerFB(leaves[--numLeaves]);
+			}
+
+			//Only leaves holding extents that changed are written
+			VirtualDiskBlock leaf = new VirtualDiskBlock(bSize);
+			for(int l = dirtyFrom / leafEntries; l < numLeaves; l++) {
+				int first = l * leafEntries;
+				int count = Math.min(leafEntries, numExtents - first);
+				Utils.copyIntToBlock(leaf, 0, count);
+				for(int i = 0; i < count; i++) {
+					Utils.copyIntToBlock(leaf, LEAF_HEADER + i * ENTRY, starts[first + i]);
+					Utils.copyIntToBlock(leaf, LEAF_HEADER + i * ENTRY + 4, lengths[first + i]);
+				}
+				disk.write(leaves[l], leaf);
+			}
+			Utils.copyIntToBlock(root, 0, numLeaves);
+			Utils.copyIntToBlock(root, 4, 1);
+			for(int l = 0; l < numLeaves; l++) {
+				Utils.copyIntToBlock(root, HEADER + l * ENTRY, offsets[l * leafEntries]);
+				Utils.copyIntToBlock(root, HEADER + l * ENTRY + 4, leaves[l]);
+			}
+		}
+		disk.write(rootBlock, root);
+		dirtyFrom = numExtents;
+	}
+
+	/**
+	 * @param logical index of a block inside the file.
+	 * @return index of the disk block holding the given block of the file.
+	 * @throws InvalidBlockNumberException whenever the file has no such block.
+	 */
+	public int getBlock(int logical) throws InvalidBlockNumberException {
+		int i = this.findExtent(logical);
+		return starts[i] + (logical - offsets[i]);
+	}
+
+	/**
+	 * Binary search over the first logical block of each extent.
+	 * @param logical index of a block inside the file.
+	 * @return index of the extent holding the given block of the file.
+	 * @throws InvalidBlockNumberException whenever the file has no such block.
+	 */
+	public int findExtent(int logical) throws InvalidBlockNumberException {
+		if(logical < 0 || logical >= numBlocks)
+			throw new InvalidBlockNumberException("Invalid file block = " + logical);
+		int low = 0;
+		int high = numExtents - 1;
+		while(low < high) {
+			int mid = (low + high + 1) / 2;
+			if(offsets[mid] <= logical)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		return low;
+	}
+
+	/**
+	 * @return index of the file's root block.
+	 */
+	public int getRootBlock() {
+		return rootBlock;
+	}
+
+	/**
+	 * @return length of the file in bytes.
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @param length length of the file in bytes, saved with the next save().
+	 */
+	public void setLength(int length) {
+		this.length = length;
+	}
+
+	/**
+	 * @return number of data blocks of the file.
+	 */
+	public int getNumBlocks() {
+		return numBlocks;
+	}
+
+	/**
+	 * @return number of extents of the file.
+	 */
+	public int getNumExtents() {
+		return numExtents;
+	}
+
+	/**
+	 * @param i index of an extent.
+	 * @return first disk block of the extent.
+	 */
+	public int getExtentStart(int i) {
+		return starts[i];
+	}
+
+	/**
+	 * @param i index of an extent.
+	 * @return number of blocks of the extent.
+	 */
+	public int getExtentLength(int i) {
+		return lengths[i];
+	}
+
+	/**
+	 * @param i index of an extent.
+	 * @return index of the first block of the file that is in the extent.
+	 */
+	public int getExtentOffset(int i) {
+		return offsets[i];
+	}
+
+	/**
+	 * @return number of extents a file can have with the disk's block size.
+	 */
+	public int getMaxExtents() {
+		return ((bSize - HEADER) / ENTRY) * ((bSize - LEAF_HEADER) / ENTRY);
+	}
+
+	/**
+	 * Adds an extent after the last one, growing the arrays when needed.
+	 */
+	private void addExtent(int start, int count) {
+		if(numExtents == starts.length) {
+			starts = Arrays.copyOf(starts, numExtents * 2);
+			lengths = Arrays.copyOf(lengths, numExtents * 2);
+			offsets = Arrays.copyOf(offsets, numExtents * 2);
+		}
+		offsets[numExtents] = numExtents == 0 ? 0
+				: offsets[numExtents - 1] + lengths[numExtents - 1];
+		starts[numExtents] = start;
+		lengths[numExtents] = count;
+		numExtents++;
+	}
+}
@@ -0,0 +1,133 @@
+package diskUtilities;
+
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidParameterException;
+
+/**
+ * Object to represent an open data file. The handle shares the DataFile
+ * 	of its OpenFileTable entry, so the I-Node and block map of the file
+ * 	are resolved once for every handle to it, and keeps its own position
+ * 	and transfer buffer.
+ */
+public class FileHandle {
+
+	private static final int MAX_BUFFER = 65536;	// largest buffer kept by a handle
+
+	private int id;
+	private String name;
+	private DataFile file;
+	private long position;
+	private byte[] buffer;
+
+	/**
+	 * Creates a handle positioned at the beginning of the file.
+	 * @param id number that identifies the handle in its table.
+	 * @param name name the file had when it was opened.
+	 * @param file shared object of the open file.
+	 */
+	FileHandle(int id, String name, DataFile file) {
+		this.id = id;
+		this.name = name;
+		this.file = file;
+		position = 0;
+		buffer = new byte[0];
+	}
+
+	/**
+	 * Reads bytes from the current position and moves past them.
+	 * @param dst array where the bytes are copied to.
+	 * @param off index in dst where the first byte is copied.
+	 * @param len maximum number of bytes to read.
+	 * @return number of bytes read, or -1 at the end of the file.
+	 * @throws IllegalStateException whenever the disk doesn't store
+	 * 	the length of its files.
+	 */
+	public int read(byte[] dst, int off, int len) throws IllegalStateException {
+		int n = file.read(position, dst, off, len);
+		if(n > 0)
+			position += n;
+		return n;
+	}
+
+	/**
+	 * Reads bytes from the current position through the handle's buffer,
+	 * 	at most MAX_BUFFER bytes at a time. The length is first cut to the
+	 * 	bytes left in the file, so a large len doesn't allocate more.
+	 * @param len maximum number of bytes to read.
+	 * @return the bytes read, empty at the end of the file.
+	 * @throws IllegalStateException whenever the disk doesn't store
+	 * 	the length of its files.
+	 */
+	public String read(int len) throws IllegalStateException {
+		long length = file.getLength();
+		if(length >= 0)
+			len = (int) Math.max(0, Math.min(len, length - position));
+		int size = Math.min(len, MAX_BUFFER);
+		if(buffer.length < size)
+			buffer = new byte[size];
+		StringBuilder text = new StringBuilder(size);
+		while(text.length() < len) {
+			int n = this.read(buffer, 0, Math.min(buffer.length, len - text.length()));
+			if(n < 0)
+				break;
+			text.append(new String(buffer, 0, n, StandardCharsets.ISO_8859_1));
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Writes bytes at the current position and moves past them.
+	 * @param src array with the bytes to write.
+	 * @param off index in src of the first byte to write.
+	 * @param len number of bytes to write.
+	 * @throws IllegalStateException whenever the disk doesn't store
+	 * 	the length of its files.
+	 * @throws InvalidParameterException whenever the file would
+	 * 	become too large.
+	 */
+	public void write(byte[] src, int off, int len)
+			throws IllegalStateException, InvalidParameterException {
+		file.write(position, src, off, len);
+		position += len;
+	}
+
+	/**
+	 * Moves the handle to the given position. Positions past the end
+	 * 	of the file are allowed; writing there fills the gap with zeros.
+	 * @param pos new position in the file.
+	 * @throws InvalidParameterException whenever pos is negative.
+	 */
+	public void seek(long pos) throws InvalidParameterException {
+		if(pos < 0)
+			throw new InvalidParameterException("Invalid position = " + pos);
+		position = pos;
+	}
+
+	/**
+	 * @return current position in the file.
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * @return number that identifies the handle.
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @return name the file had when it was opened.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the open file.
+	 */
+	public DataFile getFile() {
+		return file;
+	}
+}
@@ -5,10 +5,15 @@ package diskUtilities;
 */
 public class INode {
 
+	public static final byte DATA_FILE = 0;		// file with direct and indirect indexes
+	public static final byte DIRECTORY = 1;
+	public static final byte EXTENT_FILE = 2;	// file mapped by an ExtentMap
+	
 	private int nodeIndex;
 	private int blockIndex;
 	private int size;
 	private byte type;
+	private long length;
 	
 	/**
 	 * Initializes the I-Node with the given values.
@@ -68,6 +73,21 @@ public class INode {
 		type = t;
 	}
 
+	/**
+	 * @return length in bytes of the I-Node's file, or -1 if
+	 * 	the disk doesn't store it.
+	*/
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * @param length length in bytes of the I-Node's file.
+	*/
+	public void setLength(long length) {
+		this.length = length;
+	}
+
 	/**
 	 * @return nonnegative integer representing the index 
 	 * 	of the I-Node.
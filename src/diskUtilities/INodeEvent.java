@@ -0,0 +1,47 @@
+package diskUtilities;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for reading or saving an I-Node of a DiskUnit.
+ * Disabled by default; enable it in the recording settings.
+ */
+@Name("fileSystem.INode")
+@Label("I-Node I/O")
+@Description("Read or save of a single I-Node")
+@Category({"File System", "Disk"})
+@Enabled(false)
+@StackTrace(false)
+class INodeEvent extends Event {
+
+	@Label("Disk")
+	String disk;
+
+	@Label("I-Node")
+	int iNode;
+
+	@Label("Operation")
+	String operation;
+
+	/**
+	 * Ends the event and commits it if it is enabled.
+	 * @param disk name of the disk.
+	 * @param iNode index of the I-Node.
+	 * @param operation "read" or "save".
+	 */
+	void finish(String disk, int iNode, String operation) {
+		end();
+		if(shouldCommit()) {
+			this.disk = disk;
+			this.iNode = iNode;
+			this.operation = operation;
+			commit();
+		}
+	}
+}
@@ -8,6 +8,7 @@ public class OneLevelBlock {
 	private int size;
 	private int bSize;
 	private DiskUnit disk;
+	private VirtualDiskBlock pointers;		// contents of the index block, read once
 
 	public OneLevelBlock(DiskUnit dUnit) {
 		disk = dUnit;
@@ -31,6 +32,7 @@ public class OneLevelBlock {
 				Utils.copyIntToBlock(vdb, i * 4, 0);
 		}
 		disk.write(rootBlock, vdb);
+		pointers = vdb;
 	}
 	
 	public void getOneLevelBlock(int rootIndex) {
@@ -43,6 +45,7 @@ public class OneLevelBlock {
 			this.size++;
 			i++;
 		}
+		pointers = vdb;
 	}
 
 	public void writeString(String string) throws InvalidParameterException {
@@ -80,10 +83,8 @@ public class OneLevelBlock {
 		if(size >=  bSize/4)
 			throw new InvalidParameterException("One-Level block is full.");
 
-		VirtualDiskBlock root = new VirtualDiskBlock(bSize);
-		disk.read(rootBlock, root);
-		Utils.copyIntToBlock(root, size*4, disk.getFreeBN());
-		disk.write(rootBlock, root);
+		Utils.copyIntToBlock(pointers, size*4, disk.getFreeBN());
+		disk.write(rootBlock, pointers);
 		size++;
 		this.writeBlock(size - 1, data);
 
@@ -99,10 +100,9 @@ public class OneLevelBlock {
 		disk.registerFB(blockIndex);
 		
 		blockIndex = this.getDiskBlock(size - 1);
-		disk.read(rootBlock, vdb);
-		Utils.copyIntToBlock(vdb, index * 4, blockIndex);
-		Utils.copyIntToBlock(vdb, (size - 1) * 4, 0);
-		disk.write(rootBlock, vdb);
+		Utils.copyIntToBlock(pointers, index * 4, blockIndex);
+		Utils.copyIntToBlock(pointers, (size - 1) * 4, 0);
+		disk.write(rootBlock, pointers);
 		size--;
 	}
 
@@ -145,9 +145,7 @@ public class OneLevelBlock {
 		if(index >= size || index < 0)
 			throw new IndexOutOfBoundsException("Invalid one-level block index =" + index);
 
-		VirtualDiskBlock vdb = new VirtualDiskBlock(bSize);
-		disk.read(rootBlock, vdb);
-		return Utils.getIntFromBlock(vdb, index * 4);
+		return Utils.getIntFromBlock(pointers, index * 4);
 	}
 
 	public int getRootBlock() {
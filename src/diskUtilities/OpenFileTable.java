@@ -0,0 +1,151 @@
+package diskUtilities;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+/**
+ * Table of the data files open in a mounted DiskUnit. Every open file
+ * 	has a single DataFile shared by all its handles and by the commands
+ * 	that use the file while it's open, so their cached I-Node and block
+ * 	map stay consistent. Entries are reference counted: a file deleted
+ * 	while open leaves its directory at once but keeps its I-Node and
+ * 	blocks until its last handle is closed.
+ */
+public class OpenFileTable {
+
+	private DiskUnit disk;
+	private HashMap<Integer, Entry> files;			// by I-Node index
+	private TreeMap<Integer, FileHandle> handles;	// by handle id
+	private int nextId;
+
+	/**
+	 * Creates an empty table for the given disk.
+	 * @param disk mounted disk the files are in.
+	 */
+	public OpenFileTable(DiskUnit disk) {
+		this.disk = disk;
+		files = new HashMap<Integer, Entry>();
+		handles = new TreeMap<Integer, FileHandle>();
+		nextId = 1;
+	}
+
+	/**
+	 * Opens a data file.
+	 * @param name name of the file, kept for display.
+	 * @param node I-Node of the file.
+	 * @return a new handle positioned at the beginning of the file.
+	 * @throws InvalidParameterException whenever node is null or
+	 * 	belongs to a directory.
+	 */
+	public FileHandle open(String name, INode node) throws InvalidParameterException {
+		if(node == null || node.getType() == INode.DIRECTORY)
+			throw new InvalidParameterException("No such data file.");
+		Entry entry = files.get(node.getNodeIndex());
+		if(entry == null) {
+			entry = new Entry(new DataFile(disk, node));
+			files.put(node.getNodeIndex(), entry);
+		}
+		entry.refCount++;
+		FileHandle handle = new FileHandle(nextId++, name, entry.file);
+		handles.put(handle.getId(), handle);
+		return handle;
+	}
+
+	/**
+	 * Closes a handle. When it's the last handle of a file deleted
+	 * 	while open, the file is deleted from disk.
+	 * @param id number of the handle.
+	 * @throws InvalidParameterException whenever there's no such handle.
+	 */
+	public void close(int id) throws InvalidParameterException {
+		FileHandle handle = handles.remove(id);
+		if(handle == null)
+			throw new InvalidParameterException("No such handle = " + id);
+		int index = handle.getFile().getFileNode().getNodeIndex();
+		Entry entry = files.get(index);
+		if(--entry.refCount == 0) {
+			files.remove(index);
+			if(entry.deleted)
+				entry.file.deleteFile();
+		}
+	}
+
+	/**
+	 * Closes every handle, completing deferred deletes. Called before
+	 * 	the disk is unmounted.
+	 */
+	public void closeAll() {
+		for(int id : new ArrayList<Integer>(handles.keySet())) {
+			this.close(id);
+		}
+	}
+
+	/**
+	 * @param id number of the handle.
+	 * @return the handle with the given number.
+	 * @throws InvalidParameterException whenever there's no such handle.
+	 */
+	public FileHandle getHandle(int id) throws InvalidParameterException {
+		FileHandle handle = handles.get(id);
+		if(handle == null)
+			throw new InvalidParameterException("No such handle = " + id);
+		return handle;
+	}
+
+	/**
+	 * @return the open handles, ordered by number.
+	 */
+	public ArrayList<FileHandle> getHandles() {
+		return new ArrayList<FileHandle>(handles.values());
+	}
+
+	/**
+	 * @param node I-Node of a data file.
+	 * @return the shared DataFile if the file is open, otherwise a new one.
+	 */
+	public DataFile getFile(INode node) {
+		Entry entry = files.get(node.getNodeIndex());
+		if(entry != null)
+			return entry.file;
+		return new DataFile(disk, node);
+	}
+
+	/**
+	 * @param node I-Node of a file.
+	 * @return true if the file has open handles.
+	 */
+	public boolean isOpen(INode node) {
+		return files.containsKey(node.getNodeIndex());
+	}
+
+	/**
+	 * Deletes a data file whose directory entry is being removed. If
+	 * 	the file is open, the delete is deferred until its last handle
+	 * 	is closed.
+	 * @param node I-Node of the file.
+	 */
+	public void delete(INode node) {
+		Entry entry = files.get(node.getNodeIndex());
+		if(entry != null)
+			entry.deleted = true;
+		else
+			new DataFile(disk, node).deleteFile();
+	}
+
+	/**
+	 * Open file shared by all its handles.
+	 */
+	private class Entry {
+		private DataFile file;
+		private int refCount;
+		private boolean deleted;
+
+		private Entry(DataFile file) {
+			this.file = file;
+			refCount = 0;
+			deleted = false;
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package diskUtilities;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Blocks and I-Nodes taken from a DiskUnit before an operation that needs
+ * several of them, so the operation fails before it changes anything when
+ * the disk doesn't have room for it. While the reservation is active, the
+ * blocks and I-Nodes the thread that made it asks the disk for are handed
+ * out from it, in the order the free lists would have given them, and the
+ * reserved blocks it frees go back to it. The disk only falls back to its
+ * free lists if the reservation runs out; the blocks it takes then are
+ * tracked too, so cancel() still undoes every allocation.
+ *
+ * A reservation ends with release(), which returns what wasn't used, or
+ * with cancel(), which also returns what was handed out.
+ */
+public class Reservation {
+
+	private DiskUnit disk;
+	private Thread owner;
+	private int[] reserved;			// blocks in the order they were taken
+	private int[] blocks;
+	private int nextBlock;			// blocks before it were handed out
+	private BitSet handedOut;		// blocks handed out and not given back
+	private int[] extra;			// blocks taken from the free list after running out
+	private int numExtra;
+	private BitSet extraOut;		// extra blocks not freed yet
+	private int[] nodes;
+	private int nextNode;			// I-Nodes before it were handed out
+
+	/**
+	 * Creates an active reservation for the current thread.
+	 * @param disk disk the blocks and I-Nodes were taken from.
+	 * @param blocks reserved blocks, in the order they're handed out.
+	 * @param nodes indexes of the reserved I-Nodes, in the same order.
+	 */
+	Reservation(DiskUnit disk, int[] blocks, int[] nodes) {
+		this.disk = disk;
+		this.reserved = blocks;
+		this.blocks = blocks.clone();
+		this.nodes = nodes;
+		owner = Thread.currentThread();
+		nextBlock = 0;
+		nextNode = 0;
+		handedOut = new BitSet();
+		extra = new int[4];
+		numExtra = 0;
+		extraOut = new BitSet();
+	}
+
+	/**
+	 * Returns the blocks and I-Nodes that weren't handed out to the disk.
+	 * @throws IllegalStateException whenever the reservation already ended.
+	 */
+	public void release() throws IllegalStateException {
+		disk.endReservation(this, false);
+	}
+
+	/**
+	 * Returns every block and I-Node of the reservation to the disk,
+	 * 	including the ones handed out, undoing the allocations of an
+	 * 	operation that failed. Only safe while nothing on disk refers
+	 * 	to them.
+	 * @throws IllegalStateException whenever the reservation already ended.
+	 */
+	public void cancel() throws IllegalStateException {
+		disk.endReservation(this, true);
+	}
+
+	/**
+	 * @return number of blocks not handed out yet.
+	 */
+	public int getUnusedBlocks() {
+		return blocks.length - nextBlock;
+	}
+
+	/**
+	 * @return number of I-Nodes not handed out yet.
+	 */
+	public int getUnusedINodes() {
+		return nodes.length - nextNode;
+	}
+
+	/**
+	 * @return true if the current thread is the one that made the reservation.
+	 */
+	boolean isOwner() {
+		return Thread.currentThread() == owner;
+	}
+
+	/**
+	 * @return the next reserved block, or 0 if there are none left.
+	 */
+	int nextBlock() {
+		if(nextBlock == blocks.length)
+			return 0;
+		int bn = blocks[nextBlock++];
+		handedOut.set(bn);
+		return bn;
+	}
+
+	/**
+	 * Records a block the disk took from its free list because the
+	 * 	reservation ran out.
+	 * @param bn number of the block.
+	 */
+	void track(int bn) {
+		if(numExtra == extra.length)
+			extra = Arrays.copyOf(extra, numExtra * 2);
+		extra[numExtra++] = bn;
+		extraOut.set(bn);
+	}
+
+	/**
+	 * Takes back a block that's being freed if it was handed out by this
+	 * 	reservation, so it's handed out again before any other. A block
+	 * 	taken from the free list after the reservation ran out isn't taken
+	 * 	back, but it's no longer returned by cancel().
+	 * @param bn number of the block.
+	 * @return true if the block was taken back.
+	 */
+	boolean giveBack(int bn) {
+		if(extraOut.get(bn)) {
+			extraOut.clear(bn);
+			return false;
+		}
+		if(!handedOut.get(bn))
+			return false;
+		handedOut.clear(bn);
+		blocks[--nextBlock] = bn;
+		return true;
+	}
+
+	/**
+	 * @return the index of the next reserved I-Node, or 0 if there are
+	 * 	none left.
+	 */
+	int nextNode() {
+		if(nextNode == nodes.length)
+			return 0;
+		return nodes[nextNode++];
+	}
+
+	/**
+	 * Lists the blocks to return when the reservation ends, in the order
+	 * 	they should be freed: the unused ones from the last to the next one.
+	 * 	When cancelling, every reserved block is returned, and the blocks
+	 * 	taken after the reservation ran out that weren't freed, in the
+	 * 	reverse of the order they were taken, so the free list hands them
+	 * 	out again in the order it had before the reservation.
+	 * @param cancel whether the blocks handed out are returned too.
+	 * @return numbers of the blocks.
+	 */
+	int[] getBlocksToReturn(boolean cancel) {
+		int[] source = cancel ? reserved : blocks;
+		int first = cancel ? 0 : nextBlock;
+		int extras = cancel ? extraOut.cardinality() : 0;
+		int[] result = new int[source.length - first + extras];
+		int n = 0;
+		for(int i = numExtra - 1; i >= 0 && extras > 0; i--) {
+			if(extraOut.get(extra[i])) {
+				result[n++] = extra[i];
+				extraOut.clear(extra[i]);
+				extras--;
+			}
+		}
+		for(int i = source.length - 1; i >= first; i--) {
+			result[n++] = source[i];
+		}
+		nextBlock = blocks.length;
+		handedOut.clear();
+		extraOut.clear();
+		return result;
+	}
+
+	/**
+	 * Lists the I-Nodes to return when the reservation ends, in the same
+	 * 	order as getBlocksToReturn.
+	 * @param cancel whether the I-Nodes handed out are returned too.
+	 * @return indexes of the I-Nodes.
+	 */
+	int[] getNodesToReturn(boolean cancel) {
+		int last = cancel ? 0 : nextNode;
+		int[] result = new int[nodes.length - last];
+		int n = 0;
+		for(int i = nodes.length - 1; i >= last; i--) {
+			result[n++] = nodes[i];
+		}
+		nextNode = nodes.length;
+		return result;
+	}
+}
@@ -9,6 +9,7 @@ public class TwoLevelBlock {
 	private int size;
 	private int bSize;
 	private DiskUnit disk;
+	private VirtualDiskBlock pointers;		// contents of the two-level block, read once
 
 	public TwoLevelBlock(DiskUnit dUnit) {
 		disk = dUnit;
@@ -40,14 +41,15 @@ public class TwoLevelBlock {
 				Utils.copyIntToBlock(vdb, i * 4, 0);
 		}
 
-		//Create a partially filled one-level block.
-		if(index % (bSize/4) != 0) {
-			oneBlock.createOneLevelBlock(index % (bSize/4));
+		//Create the last one-level block, which may be partially filled.
+		if(numOfOneBlocks > 0) {
+			oneBlock.createOneLevelBlock(index - (numOfOneBlocks - 1) * (bSize/4));
 			Utils.copyIntToBlock(vdb, (numOfOneBlocks - 1) * 4, oneBlock.getRootBlock());
 		}
 	
 		//Save two-level block to disk
 		disk.write(rootBlock, vdb);
+		pointers = vdb;
 	}
 
 	public void getTwoLevelBlock(int rootIndex) {
@@ -55,6 +57,7 @@ public class TwoLevelBlock {
 		numOfOneBlocks = 0;
 		VirtualDiskBlock vdb = new VirtualDiskBlock(bSize);
 		disk.read(rootIndex, vdb);
+		pointers = vdb;
 		int i = 0;
 		while(i < bSize && Utils.getIntFromBlock(vdb, i) != 0) {
 			numOfOneBlocks++;
@@ -72,8 +75,7 @@ public class TwoLevelBlock {
 			throw new InvalidParameterException("String is longer than available size.");
 
 		OneLevelBlock oneBlock = new OneLevelBlock(disk);
-		VirtualDiskBlock vdb = new VirtualDiskBlock(bSize);
-		disk.read(rootBlock, vdb);
+		VirtualDiskBlock vdb = pointers;
 		int substringSize = (bSize/4) * bSize;
 
 		for(int i = 0; i < numOfOneBlocks - 1; i++) {
@@ -178,10 +180,8 @@ public class TwoLevelBlock {
 		if(numOfOneBlocks >= bSize/4)
 			throw new InvalidParameterException("Two-level Block is full.");
 
-		VirtualDiskBlock root = new VirtualDiskBlock(bSize);
-		disk.read(rootBlock, root);
-		Utils.copyIntToBlock(root, numOfOneBlocks * 4, olb.getRootBlock());
-		disk.write(rootBlock, root);
+		Utils.copyIntToBlock(pointers, numOfOneBlocks * 4, olb.getRootBlock());
+		disk.write(rootBlock, pointers);
 		numOfOneBlocks++;
 	}
 	
@@ -189,17 +189,15 @@ public class TwoLevelBlock {
 		if(index >= bSize/4)
 			throw new InvalidParameterException("Two-level Block is full.");
 		
-		VirtualDiskBlock root = new VirtualDiskBlock(bSize);
-		disk.read(rootBlock, root);
-		int blockIndex = Utils.getIntFromBlock(root, index * 4);
-		VirtualDiskBlock vdb = new VirtualDiskBlock(bSize);
+		int blockIndex = Utils.getIntFromBlock(pointers, index * 4);
 		OneLevelBlock olb = new OneLevelBlock(disk);
 		olb.getOneLevelBlock(blockIndex);
 		olb.delete();
-		Utils.copyIntToBlock(root, index * 4, 
-				Utils.getIntFromBlock(vdb, (numOfOneBlocks - 1) * 4));
-		Utils.copyIntToBlock(root, (numOfOneBlocks - 1) * 4, 0);
-		disk.write(rootBlock, root);
+		//The last one-level block takes the place of the deleted one
+		Utils.copyIntToBlock(pointers, index * 4, 
+				Utils.getIntFromBlock(pointers, (numOfOneBlocks - 1) * 4));
+		Utils.copyIntToBlock(pointers, (numOfOneBlocks - 1) * 4, 0);
+		disk.write(rootBlock, pointers);
 		numOfOneBlocks--;
 	}
 
@@ -209,10 +207,8 @@ public class TwoLevelBlock {
 			throw new IndexOutOfBoundsException("Invalid two-level block index = " + index);
 
 		OneLevelBlock oneBlock = new OneLevelBlock(disk);
-		VirtualDiskBlock vdb = new VirtualDiskBlock(bSize);
-		disk.read(rootBlock, vdb); 			//Read the two-level block from disk
 		//Read index of one-level block and return its object.
-		oneBlock.getOneLevelBlock(Utils.getIntFromBlock(vdb, index * 4));
+		oneBlock.getOneLevelBlock(Utils.getIntFromBlock(pointers, index * 4));
 		return oneBlock;
 	}
 
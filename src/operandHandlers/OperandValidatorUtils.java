@@ -38,7 +38,8 @@ public class OperandValidatorUtils {
 	}
 	
 	public static OperandAnalyzer getAnalyzerFor(String op) {
-		if (op.equals("int") || op.equals("bsize") || op.equals("nblocks"))
+		if (op.equals("int") || op.equals("bsize") || op.equals("nblocks")
+				|| op.equals("size"))
 			return IntOperandAnalyzer.getInstance(); 
 		else if (op.equals("name") || op.equals("file") )
 			return NameOperandAnalyzer.getInstance(); 
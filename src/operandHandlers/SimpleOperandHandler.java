@@ -23,10 +23,13 @@ public class SimpleOperandHandler {
 		// more need to be added...
 		if (tType.equals("name") || tType.equals("file")) 
 			return isValidName(token); 
-		else if (tType.equals("int") || tType.equals("bsize") || tType.equals("nblocks"))
+		else if (tType.equals("int") || tType.equals("bsize") || tType.equals("nblocks")
+				|| tType.equals("size"))
 			return isValidInt(token); 
 		else if (tType.equals("dir"))
 			return isValidDir(token);
+		else if (tType.equals("path"))
+			return isValidPath(token);
 		else 
 			return false; 
 		
@@ -60,6 +63,14 @@ public class SimpleOperandHandler {
 		}		
 	}
 	
+	/**
+	 * Paths name files of the host system, so any token is accepted 
+	 * and the host decides if it exists.
+	 */
+	public static boolean isValidPath(String operand) {
+		return operand.length() > 0;
+	}
+	
 	public static boolean isValidDir(String operand) {
 		boolean isDir = (isValidName(operand) ||  
 				(operand.charAt(0) == '.' && operand.charAt(1) == '.'));
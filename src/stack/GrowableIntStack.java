@@ -0,0 +1,54 @@
+package stack;
+
+import exceptions.EmptyStackException;
+
+/**
+ * Stack of ints that grows as needed, for stacks whose size isn't
+ * known in advance.
+ */
+public class GrowableIntStack {
+	private static final int DS = 10;    // stack's default capacity
+	private int[] element;               // the stack's content
+	private int top;
+
+	public GrowableIntStack() {
+		element = new int[DS];
+		top = -1;
+	}
+
+	public GrowableIntStack(int s) {
+		if (s<=0) s = DS;
+		element = new int[s];
+		top = -1;
+	}
+
+	public boolean isEmpty() {
+		return top == -1;
+	}
+
+	public int size() {
+		return top+1;
+	}
+
+	public int pop() throws EmptyStackException {
+		if (isEmpty())
+			throw new EmptyStackException();
+		return element[top--];
+	}
+
+	public void push(int n) {
+		if (top == element.length - 1) {
+			int[] larger = new int[element.length * 2];
+			System.arraycopy(element, 0, larger, 0, element.length);
+			element = larger;
+		}
+		element[++top] = n;
+	}
+
+	public int top() throws EmptyStackException {
+		if (isEmpty())
+			throw new EmptyStackException();
+		return element[top];
+	}
+
+}
@@ -0,0 +1,29 @@
+package systemGeneralClasses;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for the execution of a command by its 
+ * CommandActionHandler. Disabled by default; enable it in the 
+ * recording settings.
+ */
+@Name("fileSystem.Command")
+@Label("Command")
+@Description("Execution of a system command")
+@Category({"File System", "Commands"})
+@Enabled(false)
+@StackTrace(false)
+class CommandEvent extends Event {
+
+	@Label("Command")
+	String command;
+
+	@Label("Operands")
+	String operands;
+}
@@ -53,7 +53,7 @@ public abstract class CommandProcessor {
 		
 		// see if there is a matching system command for the command
 		// referred to in the input line
-		SystemCommand mSCommand = searchCommand(c.getToken(1)); 
+		SystemCommand mSCommand = searchCommand(c.getToken(1), c.getNumberOfTokens() - 1); 
 		if (mSCommand == null) { 
 			errMsg.setMessage("Command " + c.getToken(1) + " does not exist.");
 			c.setSc(null); 
@@ -64,16 +64,26 @@ public abstract class CommandProcessor {
 	} 
 	
 	/**
-	 * 
-	 * @param cl
-	 * @return
+	 * Finds the system command with the given name. A command may be 
+	 * added more than once with different numbers of operands; the one
+	 * matching the number of operands given is preferred. 
+	 * @param cname name of the command
+	 * @param nOperands number of operands in the input line
+	 * @return the matching command, the first one with that name if 
+	 * none has that number of operands, or null if none has that name.
 	 */
-	private SystemCommand searchCommand(String cname) {  
-		for (int i=0; i<commandList[currentState.top()].size(); i++)
-			if (commandList[currentState.top()].get(i).getName().equals(cname))
-				return commandList[currentState.top()].get(i); 
-		
-		return null; 
+	private SystemCommand searchCommand(String cname, int nOperands) {  
+		SystemCommand found = null; 
+		for (int i=0; i<commandList[currentState.top()].size(); i++) {
+			SystemCommand sc = commandList[currentState.top()].get(i); 
+			if (sc.getName().equals(cname)) { 
+				if (sc.getNumberOfOperands() == nOperands)
+					return sc; 
+				if (found == null)
+					found = sc; 
+			}
+		}
+		return found; 
 	}
 
 	
@@ -114,7 +124,19 @@ public abstract class CommandProcessor {
 	 */
 	public ArrayList<String> executeCommand(SystemCommand sc, Command commandToE) {
 		// get the command execution object corresponding to the command
-	    return sc.getCommandActionHandler().execute(commandToE); 			
+		CommandEvent event = new CommandEvent(); 
+		event.begin(); 
+		try { 
+			return sc.getCommandActionHandler().execute(commandToE); 
+		} finally { 
+			event.end(); 
+			if (event.shouldCommit()) { 
+				event.command = sc.getName(); 
+				if (commandToE instanceof FixedLengthCommand)
+					event.operands = commandToE.toString(); 
+				event.commit(); 
+			}
+		}
 	}
 
 	/**
@@ -0,0 +1,119 @@
+package testers;
+
+import java.util.ArrayList;
+
+import diskUtilities.DiskUnit;
+import diskUtilities.ExtentMap;
+import exceptions.FullFileException;
+
+public class ExtentMapTester {
+
+	public static void main(String[] args) {
+
+		String name = "extents";
+		try {
+			DiskUnit.deleteDisk(name);
+		} catch (Exception e) {
+			//There was no disk to delete
+		}
+		DiskUnit.createDiskUnit(name, 256, 64);
+		DiskUnit d = DiskUnit.mount(name);
+
+		testExtentMap(d);
+
+		d.shutdown();
+	}
+
+	private static void testExtentMap(DiskUnit d) {
+
+		int free = d.getFreeBlockCount();
+		ExtentMap map = new ExtentMap(d);
+		int rootEntries = (d.getBlockSize() - 16) / 8;
+		System.out.println("Free blocks: " + free);
+		System.out.println("Extents in the root block: " + rootEntries);
+		System.out.println("Most extents of a file: " + map.getMaxExtents());
+
+		System.out.println("///////////////////////////////////////////");
+
+		//A block taken after each extent keeps the next one from joining it
+		ArrayList<Integer> spacers = new ArrayList<Integer>();
+		map.create();
+		for(int i = 0; i < rootEntries + 2; i++) {
+			map.addBlocks(2);
+			spacers.add(d.getFreeBN());
+		}
+		map.setLength(map.getNumBlocks() * d.getBlockSize());
+		map.save();
+		check("Extents past the root block", map.getNumExtents() == rootEntries + 2);
+
+		ExtentMap loaded = new ExtentMap(d);
+		loaded.load(map.getRootBlock());
+		check("Reloaded with depth 1", sameBlocks(map, loaded));
+
+		//Only the leaf holding the new extent is written
+		loaded.addBlocks(1);
+		spacers.add(d.getFreeBN());
+		loaded.save();
+		map = new ExtentMap(d);
+		map.load(loaded.getRootBlock());
+		check("Partial save", sameBlocks(map, loaded));
+
+		//Cuts the third extent in half and goes back to depth 0
+		map.truncate(5);
+		map.setLength(5 * d.getBlockSize());
+		map.save();
+		check("Truncated to 3 extents", map.getNumExtents() == 3 && map.getNumBlocks() == 5
+				&& map.getExtentLength(2) == 1);
+		loaded = new ExtentMap(d);
+		loaded.load(map.getRootBlock());
+		check("Reloaded with depth 0", sameBlocks(map, loaded)
+				&& loaded.getLength() == 5 * d.getBlockSize());
+		for(int bn : spacers) {
+			d.registerFB(bn);
+		}
+		spacers.clear();
+		check("Leaves and truncated blocks freed", d.getFreeBlockCount() == free - 1 - 5);
+
+		System.out.println("///////////////////////////////////////////");
+
+		try {
+			while(true) {
+				map.addBlocks(1);
+				spacers.add(d.getFreeBN());
+			}
+		} catch (FullFileException e) {
+			System.out.println(e.getMessage());
+		}
+		map.save();
+		check("File full at most extents", map.getNumExtents() == map.getMaxExtents());
+		loaded = new ExtentMap(d);
+		loaded.load(map.getRootBlock());
+		check("Reloaded full file", sameBlocks(map, loaded));
+
+		int kept = map.getExtentOffset(rootEntries - 1);
+		map.truncate(kept);
+		map.save();
+		for(int bn : spacers) {
+			d.registerFB(bn);
+		}
+		check("Truncated below the root capacity", map.getNumExtents() == rootEntries - 1
+				&& d.getFreeBlockCount() == free - 1 - kept);
+
+		map.delete();
+		check("Free blocks back to " + free, d.getFreeBlockCount() == free);
+	}
+
+	private static boolean sameBlocks(ExtentMap a, ExtentMap b) {
+		if(a.getNumBlocks() != b.getNumBlocks() || a.getNumExtents() != b.getNumExtents())
+			return false;
+		for(int i = 0; i < a.getNumBlocks(); i++) {
+			if(a.getBlock(i) != b.getBlock(i))
+				return false;
+		}
+		return true;
+	}
+
+	private static void check(String test, boolean passed) {
+		System.out.println(test + ": " + (passed ? "OK" : "FAILED"));
+	}
+}
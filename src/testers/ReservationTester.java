@@ -0,0 +1,170 @@
+package testers;
+
+import java.util.Arrays;
+
+import diskUtilities.DiskUnit;
+import diskUtilities.INode;
+import diskUtilities.Reservation;
+
+public class ReservationTester {
+
+	public static void main(String[] args) {
+
+		String name = "reserves";
+		try {
+			DiskUnit.deleteDisk(name);
+		} catch (Exception e) {
+			//There was no disk to delete
+		}
+		DiskUnit.createDiskUnit(name, 256, 64);
+		DiskUnit d = DiskUnit.mount(name);
+
+		testCancel(d);
+		testRelease(d);
+		testWait(d);
+
+		d.shutdown();
+	}
+
+	/**
+	 * Part of the reservation is used, then more blocks than it holds,
+	 * 	and cancelling gives back everything in the order it was.
+	 */
+	private static void testCancel(DiskUnit d) {
+
+		int freeBlocks = d.getFreeBlockCount();
+		int freeNodes = d.getFreeINodeCount();
+		int[] blocks = peekBlocks(d, 12);
+		int[] nodes = peekINodes(d, 3);
+		System.out.println("Next free blocks: " + Arrays.toString(blocks));
+		System.out.println("Next free I-Nodes: " + Arrays.toString(nodes));
+
+		Reservation r = d.reserve(6, 2);
+		check("Blocks reserved", d.getFreeBlockCount() == freeBlocks - 6);
+		check("I-Nodes reserved", d.getFreeINodeCount() == freeNodes - 2);
+		int[] taken = new int[4];
+		for(int i = 0; i < taken.length; i++) {
+			taken[i] = d.getFreeBN();
+		}
+		check("Reserved blocks handed out in order",
+				Arrays.equals(taken, Arrays.copyOf(blocks, 4)));
+		check("Reserved I-Node handed out", d.getFirstFreeINode().getNodeIndex() == nodes[0]);
+		check("Unused blocks", r.getUnusedBlocks() == 2);
+
+		//Two more than the reservation holds come from the free list
+		for(int i = 0; i < 4; i++) {
+			d.getFreeBN();
+		}
+		check("Reservation ran out", r.getUnusedBlocks() == 0);
+		check("Blocks taken from the free list", d.getFreeBlockCount() == freeBlocks - 8);
+
+		r.cancel();
+		check("Free blocks after cancel", d.getFreeBlockCount() == freeBlocks);
+		check("Free I-Nodes after cancel", d.getFreeINodeCount() == freeNodes);
+		check("Same blocks in the same order", Arrays.equals(peekBlocks(d, 12), blocks));
+		check("Same I-Nodes in the same order", Arrays.equals(peekINodes(d, 3), nodes));
+	}
+
+	/**
+	 * Releasing returns only what wasn't handed out.
+	 */
+	private static void testRelease(DiskUnit d) {
+
+		int freeBlocks = d.getFreeBlockCount();
+		int freeNodes = d.getFreeINodeCount();
+		int[] blocks = peekBlocks(d, 8);
+		int[] nodes = peekINodes(d, 2);
+
+		Reservation r = d.reserve(6, 2);
+		int first = d.getFreeBN();
+		int second = d.getFreeBN();
+		INode node = d.getFirstFreeINode();
+		r.release();
+		check("Used blocks kept", d.getFreeBlockCount() == freeBlocks - 2);
+		check("Used I-Node kept", d.getFreeINodeCount() == freeNodes - 1);
+		check("Unused blocks back in order",
+				Arrays.equals(peekBlocks(d, 6), Arrays.copyOfRange(blocks, 2, 8)));
+		check("Unused I-Node back", peekINodes(d, 1)[0] == nodes[1]);
+		try {
+			r.cancel();
+			check("Ended reservation can't be cancelled", false);
+		} catch (IllegalStateException e) {
+			check("Ended reservation can't be cancelled", true);
+		}
+
+		d.registerFB(second);
+		d.registerFB(first);
+		d.setFirstFreeINode(node);
+		check("Same blocks after freeing them", Arrays.equals(peekBlocks(d, 8), blocks));
+	}
+
+	/**
+	 * A second reservation waits until the active one ends.
+	 */
+	private static void testWait(final DiskUnit d) {
+
+		final Reservation r = d.reserve(2, 0);
+		final Reservation[] second = new Reservation[1];
+		Thread t = new Thread() {
+			@Override
+			public void run() {
+				second[0] = d.reserve(2, 0);
+				second[0].release();
+			}
+		};
+		t.start();
+		try {
+			t.join(200);
+			check("Second reservation waits", t.isAlive());
+			r.release();
+			t.join(2000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		check("Second reservation made after release", !t.isAlive() && second[0] != null);
+		Reservation active = d.reserve(1, 0);
+		try {
+			d.reserve(1, 0);
+			check("Two reservations in one thread fail", false);
+		} catch (IllegalStateException e) {
+			check("Two reservations in one thread fail", true);
+		}
+		active.release();
+	}
+
+	/**
+	 * Takes the next blocks of the free list and gives them back,
+	 * 	leaving the list as it was.
+	 */
+	private static int[] peekBlocks(DiskUnit d, int n) {
+		int[] blocks = new int[n];
+		for(int i = 0; i < n; i++) {
+			blocks[i] = d.getFreeBN();
+		}
+		for(int i = n - 1; i >= 0; i--) {
+			d.registerFB(blocks[i]);
+		}
+		return blocks;
+	}
+
+	/**
+	 * Takes the next I-Nodes of the free list and gives them back,
+	 * 	leaving the list as it was.
+	 */
+	private static int[] peekINodes(DiskUnit d, int n) {
+		INode[] nodes = new INode[n];
+		int[] indexes = new int[n];
+		for(int i = 0; i < n; i++) {
+			nodes[i] = d.getFirstFreeINode();
+			indexes[i] = nodes[i].getNodeIndex();
+		}
+		for(int i = n - 1; i >= 0; i--) {
+			d.setFirstFreeINode(nodes[i]);
+		}
+		return indexes;
+	}
+
+	private static void check(String test, boolean passed) {
+		System.out.println(test + ": " + (passed ? "OK" : "FAILED"));
+	}
+}
@@ -0,0 +1,23 @@
+package theSystem;
+
+/**
+ * Management interface with the throughput and latency of one
+ * system command.
+ */
+public interface CommandMXBean {
+
+	String getName();
+
+	long getCount();
+
+	double getTotalTimeMillis();
+
+	double getMeanLatencyMicros();
+
+	double getMaxLatencyMicros();
+
+	/**
+	 * @return commands completed per second of execution time.
+	 */
+	double getOpsPerSecond();
+}
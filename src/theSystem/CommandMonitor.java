@@ -0,0 +1,92 @@
+package theSystem;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Keeps the execution count and latency of a command and exposes them as
+ * a platform MBean named "FileSystem:type=Command,session=<id>,name=<command>",
+ * where id is the number of the session that runs the command.
+ */
+public class CommandMonitor implements CommandMXBean {
+
+	private String name;
+	private ObjectName objectName;
+	private long count;
+	private long totalNanos;
+	private long maxNanos;
+
+	/**
+	 * Creates the monitor of a command and registers its MBean.
+	 * @param name name of the command.
+	 * @param session number of the session that runs the command.
+	 */
+	public CommandMonitor(String name, int session) {
+		this.name = name;
+		try {
+			objectName = new ObjectName("FileSystem:type=Command,session=" + session 
+					+ ",name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		} catch (JMException e) {
+			System.err.println("Unable to register MBean for " + name + ": " + e.getMessage());
+			objectName = null;
+		}
+	}
+
+	/**
+	 * Removes the MBean of the command.
+	 */
+	public void unregister() {
+		if(objectName == null)
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (JMException e) {
+			System.err.println("Unable to unregister MBean for " + name + ": " + e.getMessage());
+		}
+		objectName = null;
+	}
+
+	/**
+	 * Records one execution of the command.
+	 * @param nanos time the command took.
+	 */
+	public synchronized void record(long nanos) {
+		count++;
+		totalNanos += nanos;
+		if(nanos > maxNanos)
+			maxNanos = nanos;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public synchronized long getCount() {
+		return count;
+	}
+
+	@Override
+	public synchronized double getTotalTimeMillis() {
+		return totalNanos / 1e6;
+	}
+
+	@Override
+	public synchronized double getMeanLatencyMicros() {
+		return count == 0 ? 0 : totalNanos / 1e3 / count;
+	}
+
+	@Override
+	public synchronized double getMaxLatencyMicros() {
+		return maxNanos / 1e3;
+	}
+
+	@Override
+	public synchronized double getOpsPerSecond() {
+		return totalNanos == 0 ? 0 : count / (totalNanos / 1e9);
+	}
+}
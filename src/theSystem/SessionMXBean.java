@@ -0,0 +1,22 @@
+package theSystem;
+
+/**
+ * Management interface with the state of the command session.
+ */
+public interface SessionMXBean {
+
+	/**
+	 * @return name of the mounted disk, or an empty string if none.
+	 */
+	String getMountedDisk();
+
+	/**
+	 * @return path of the current directory, or an empty string if
+	 * 	no disk is mounted.
+	 */
+	String getCurrentDirectory();
+
+	long getCommandsExecuted();
+
+	long getUptimeSeconds();
+}
@@ -2,16 +2,40 @@ package theSystem;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.InvalidParameterException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
 import diskUtilities.DataFile;
 import diskUtilities.Directory;
 import diskUtilities.DirectoryManager;
 import diskUtilities.DiskManager;
 import diskUtilities.DiskManager.ManagerNode;
+import diskUtilities.DiskMonitor;
 import diskUtilities.DiskUnit;
+import diskUtilities.FileHandle;
 import diskUtilities.INode;
+import diskUtilities.OpenFileTable;
 import diskUtilities.Utils;
+import operandHandlers.SimpleOperandHandler;
 import systemGeneralClasses.Command;
 import systemGeneralClasses.CommandActionHandler;
 import systemGeneralClasses.CommandProcessor;
@@ -29,10 +53,20 @@ import stack.IntStack;
 public class SystemCommandsProcessor extends CommandProcessor { 
 	
 	private static final String FILEPATH = "DiskUnits/";
+	private static final AtomicInteger sessions = new AtomicInteger();	// sessions created
 	private ArrayList<String> resultsList; 
 	private DirectoryManager dirManager;
 	private Directory currDirectory;
 	private DiskUnit dUnit;
+	private OpenFileTable openFiles;
+	private DiskMonitor diskMonitor;
+	private TreeMap<String, Mount> mounts;		// mounted disks by name
+	private DiskManager diskManager;			// catalog of disks, open for the session
+	private HashMap<String, CommandMonitor> commandMonitors;
+	private int sessionId;						// number of the session in its MBean names
+	private ObjectName sessionName;				// null if the MBean isn't registered
+	private long startTime;
+	private volatile long commandsExecuted;		// read by JMX threads
 	
 	SystemCommand attemptedSC; 
 
@@ -59,12 +93,21 @@ public class SystemCommandsProcessor extends CommandProcessor {
 
 		add(GENERALSTATE, SystemCommand.getFLSC("showdisks", new ShowDisksProcessor())); 		
 		add(GENERALSTATE, SystemCommand.getFLSC("createdisk name nblocks bsize", new CreateDiskProcessor())); 
+		add(GENERALSTATE, SystemCommand.getFLSC("createdisk name nblocks bsize int", new CreateDiskProcessor())); 
 		add(GENERALSTATE, SystemCommand.getFLSC("deletedisk name", new DeleteDiskProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("clonedisk name name", new CloneDiskProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("resizedisk name nblocks", new ResizeDiskProcessor()));
 		add(GENERALSTATE, SystemCommand.getFLSC("mount name ", new MountProcessor())); 
 		add(GENERALSTATE, SystemCommand.getFLSC("unmount", new UnmountProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("unmount name", new UnmountProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("use name", new UseDiskProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("mounts", new ListMountsProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("df", new DiskFreeProcessor()));
 		add(GENERALSTATE, SystemCommand.getFLSC("loadfile file name", new LoadFileProcessor()));
 		add(GENERALSTATE, SystemCommand.getFLSC("cp file name", new CopyFileProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("copy path path", new DiskCopyProcessor()));
 		add(GENERALSTATE, SystemCommand.getFLSC("ls", new ListFilesProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("stat name", new StatFileProcessor()));
 		add(GENERALSTATE, SystemCommand.getFLSC("cat name", new DisplayContentProcessor()));
 		add(GENERALSTATE, SystemCommand.getFLSC("cd dir", new ChangeDirectoryProcessor()));
 		add(GENERALSTATE, SystemCommand.getFLSC("mkdir name", new CreateDirectoryProcessor()));
@@ -73,15 +116,44 @@ public class SystemCommandsProcessor extends CommandProcessor {
 		add(GENERALSTATE, SystemCommand.getFLSC("rm name", new RemoveFileProcessor()));
 		add(GENERALSTATE, SystemCommand.getFLSC("find name", new FindFileProcessor()));
 		add(GENERALSTATE, SystemCommand.getFLSC("append file name", new AppendFileProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("export name path", new ExportFileProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("exportdir name path", new ExportDirectoryProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("import path", new ImportProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("import path name", new ImportProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("truncate name size", new TruncateFileProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("fileformat name", new FileFormatProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("open name", new OpenFileProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("close int", new CloseFileProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("read int size", new ReadHandleProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("write int file", new WriteHandleProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("seek int size", new SeekHandleProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("lsof", new ListOpenFilesProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("stats", new StatsProcessor()));
+		add(GENERALSTATE, SystemCommand.getFLSC("resetstats", new ResetStatsProcessor()));
 		add(GENERALSTATE, SystemCommand.getFLSC("help", new HelpProcessor()));
 		add(GENERALSTATE, SystemCommand.getFLSC("exit", new ShutDownProcessor())); 
 				
 		//Set to execute
 		stopExecution = false; 
+		mounts = new TreeMap<String, Mount>();
 		
 		//Create directory
 		File dir = new File("DiskUnits");
 		dir.mkdir();
+		diskManager = new DiskManager();
+		
+		//Expose the session and its commands through JMX, numbering
+		//the session so several processors in one JVM don't collide
+		commandMonitors = new HashMap<String, CommandMonitor>();
+		startTime = System.currentTimeMillis();
+		sessionId = sessions.incrementAndGet();
+		try {
+			sessionName = new ObjectName("FileSystem:type=Session,id=" + sessionId);
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new SessionMonitor(), sessionName);
+		} catch (JMException e) {
+			System.err.println("Unable to register session MBean: " + e.getMessage());
+			sessionName = null;
+		}
 
 	}
 		
@@ -89,6 +161,183 @@ public class SystemCommandsProcessor extends CommandProcessor {
 		return resultsList; 
 	}
 	
+	/**
+	 * Executes the command, attributing the I/O it causes on the
+	 * 	mounted disks to the command's name and recording its latency.
+	 */
+	@Override
+	public ArrayList<String> executeCommand(SystemCommand sc, Command commandToE) {
+		ArrayList<Mount> disks = new ArrayList<Mount>(mounts.values());
+		for(Mount m : disks) {
+			m.disk.getStats().beginCommand(sc.getName());
+		}
+		long start = System.nanoTime();
+		try {
+			return super.executeCommand(sc, commandToE);
+		} finally {
+			long elapsed = System.nanoTime() - start;
+			for(Mount m : disks) {
+				m.disk.getStats().endCommand();
+			}
+			CommandMonitor monitor = commandMonitors.get(sc.getName());
+			if(monitor == null) {
+				monitor = new CommandMonitor(sc.getName(), sessionId);
+				commandMonitors.put(sc.getName(), monitor);
+			}
+			monitor.record(elapsed);
+			commandsExecuted++;
+			//The MBeans go once exit has been recorded
+			if(stopExecution)
+				this.unregisterMonitors();
+		}
+	}
+	
+	/**
+	 * Removes the MBeans of the session and of its commands, so a 
+	 * 	session that ended isn't kept reachable through JMX.
+	 */
+	private void unregisterMonitors() {
+		for(CommandMonitor monitor : commandMonitors.values()) {
+			monitor.unregister();
+		}
+		commandMonitors.clear();
+		if(sessionName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(sessionName);
+			} catch (JMException e) {
+				System.err.println("Unable to unregister session MBean: " + e.getMessage());
+			}
+			sessionName = null;
+		}
+	}
+	
+	/**
+	 * Makes a mounted disk the working disk. The state of the previous
+	 * 	one stays in its entry of the mount table.
+	 * @param mount entry of the disk.
+	 */
+	private void activate(Mount mount) {
+		dUnit = mount.disk;
+		dirManager = mount.dirManager;
+		openFiles = mount.openFiles;
+		diskMonitor = mount.monitor;
+		//The folder may have changed through paths of other disks
+		currDirectory = new Directory(dUnit, 
+				dUnit.getINode(dirManager.getCurrentDirectoryNode().getNodeIndex()));
+	}
+	
+	/**
+	 * Closes the open files of a mounted disk and shuts it down. If it's
+	 * 	the working disk, no disk is left as the working disk.
+	 * @param name name of the disk.
+	 */
+	private void unmountDisk(String name) {
+		Mount mount = mounts.remove(name);
+		if(mount.disk == dUnit) {
+			dUnit = null;
+			openFiles = null;
+			dirManager = null;
+			currDirectory = null;
+			diskMonitor = null;
+		}
+		mount.monitor.unregister();
+		mount.openFiles.closeAll();
+		mount.disk.shutdown();
+	}
+	
+	/**
+	 * Finds the folder and name a path refers to. A path is either
+	 * 	"disk:/folder/.../name", starting at the root folder of a mounted
+	 * 	disk, or "folder/.../name", starting at the working directory of
+	 * 	the working disk.
+	 * @param path path to resolve.
+	 * @return the location of the path, whose name may not exist yet.
+	 * @throws InvalidParameterException whenever the disk isn't mounted,
+	 * 	a folder of the path doesn't exist or the path has no name.
+	 */
+	private Location resolve(String path) throws InvalidParameterException {
+		Location loc = new Location();
+		String rest = path;
+		int colon = path.indexOf(':');
+		if(colon >= 0) {
+			loc.mount = mounts.get(path.substring(0, colon));
+			if(loc.mount == null)
+				throw new InvalidParameterException(path.substring(0, colon) + " is not mounted.");
+			rest = path.substring(colon + 1);
+			loc.dir = new Directory(loc.mount.disk, loc.mount.disk.getINode(0));
+		} else {
+			if(dUnit == null)
+				throw new InvalidParameterException("No disk is currently mounted.");
+			loc.mount = mounts.get(dUnit.getDiskName());
+			loc.dir = currDirectory;
+		}
+		
+		ArrayList<String> names = new ArrayList<String>();
+		for(String name : rest.split("/")) {
+			if(!name.isEmpty())
+				names.add(name);
+		}
+		if(names.isEmpty())
+			throw new InvalidParameterException("No file name in " + path);
+		for(int i = 0; i < names.size() - 1; i++) {
+			INode node = loc.dir.getFileNode(names.get(i));
+			if(node == null || node.getType() != INode.DIRECTORY)
+				throw new InvalidParameterException("No such folder: " + names.get(i));
+			loc.dir = new Directory(loc.mount.disk, node);
+		}
+		loc.name = names.get(names.size() - 1);
+		return loc;
+	}
+	
+	/**
+	 * Entry of the mount table: a mounted disk with its working 
+	 * 	directory and open files.
+	 */
+	private class Mount {
+		private DiskUnit disk;
+		private DirectoryManager dirManager;
+		private OpenFileTable openFiles;
+		private DiskMonitor monitor;
+	}
+	
+	/**
+	 * Folder of a mounted disk and a name inside it, found from a path.
+	 */
+	private class Location {
+		private Mount mount;
+		private Directory dir;
+		private String name;
+	}
+	
+	/**
+	 * Management view of this session.
+	 */
+	private class SessionMonitor implements SessionMXBean {
+
+		@Override
+		public String getMountedDisk() {
+			DiskUnit disk = dUnit;
+			return disk == null ? "" : disk.getDiskName();
+		}
+
+		@Override
+		public String getCurrentDirectory() {
+			DirectoryManager manager = dirManager;
+			return manager == null ? "" : manager.getDirPath();
+		}
+
+		@Override
+		public long getCommandsExecuted() {
+			return commandsExecuted;
+		}
+
+		@Override
+		public long getUptimeSeconds() {
+			return (System.currentTimeMillis() - startTime) / 1000;
+		}
+		
+	}
+	
 	/**
 	 * Command for shutting down the command system.
 	 */
@@ -103,12 +352,11 @@ public class SystemCommandsProcessor extends CommandProcessor {
 
 			resultsList = new ArrayList<String>(); 
 			resultsList.add("System is shutting down...");
-			if(dUnit != null) {
-				dUnit.shutdown();
-				dirManager = null;
-				currDirectory = null;
-				dUnit = null;
+			for(String name : new ArrayList<String>(mounts.keySet())) {
+				unmountDisk(name);
 			}
+			DiskUnit.closeIdleDisks();
+			diskManager.close();
 			stopExecution = true;
 			return resultsList; 
 		}
@@ -119,7 +367,8 @@ public class SystemCommandsProcessor extends CommandProcessor {
 	 */
 	private class ShowDisksProcessor implements CommandActionHandler {
 		/**
-		 * Calls DiskManager and shows the list's contents.
+		 * Calls DiskManager and shows the list's contents. Only the
+		 * 	catalog and the mount table are read, no disk is opened.
 		 * @param c input to be read.
 		 * @return message to display to user.
 		 */
@@ -128,20 +377,12 @@ public class SystemCommandsProcessor extends CommandProcessor {
 			
 			resultsList = new ArrayList<String>(); 
 			
-			String name = null;
-			if(dUnit != null) {
-				name = dUnit.getDiskName();
-			}
-				
-			DiskManager dManager = new DiskManager();
-			
-			if(dManager.getNumberOfDisks() == 0) {
+			if(diskManager.getNumberOfDisks() == 0) {
 				resultsList.add("No disks are available");
 				return resultsList;
 			} else {
-				for(int i = 0; i < dManager.getNumberOfDisks(); i++) {
-					ManagerNode dInfo = dManager.getDisk(i);
-					if(name != null && dInfo.getName().contains(name)) {
+				for(ManagerNode dInfo : diskManager.getDisks()) {
+					if(mounts.containsKey(dInfo.getName())) {
 						resultsList.add("	" + dInfo.getName() + "   " + dInfo.getCapacity() 
 							+ "   " + dInfo.getBlocksize() + "   mounted");
 					} else {
@@ -150,7 +391,6 @@ public class SystemCommandsProcessor extends CommandProcessor {
 					}
 				}
 			}
-			dManager.close();
 			
 			return resultsList; 
 		} 
@@ -163,7 +403,8 @@ public class SystemCommandsProcessor extends CommandProcessor {
 	private class CreateDiskProcessor implements CommandActionHandler {
 		/**
 		 * Creates a new DiskUnit object and adds the disk to the
-		 * list of available disks.
+		 * list of available disks. An optional fourth operand gives
+		 * the number of bytes of the disk per I-Node.
 		 * @param c input to be read.
 		 * @return message to display to user.
 		 */
@@ -181,17 +422,13 @@ public class SystemCommandsProcessor extends CommandProcessor {
 			int bsize = Integer.parseInt(fc.getOperand(3));
 			
 			try {
-				DiskManager dManager = new DiskManager();
-				if(dManager.getNumberOfDisks() >= 20) {
-					resultsList.add("No more disks can be created");
-					dManager.close();
-					return resultsList;
-				}
-				DiskUnit.createDiskUnit(name, nblocks, bsize);
+				if(fc.getNumberOfOperands() > 3)
+					DiskUnit.createDiskUnit(name, nblocks, bsize, Integer.parseInt(fc.getOperand(4)));
+				else
+					DiskUnit.createDiskUnit(name, nblocks, bsize);
+				diskManager.addDisk(name, nblocks, bsize);
 				resultsList.add(FILEPATH + name);
 				resultsList.add("New disk succesfully created: " + name);
-				dManager.addDisk(name, nblocks, bsize);
-				dManager.close();
 			} catch (Exception e) {
 				resultsList.add(e.getMessage());
 			}
@@ -201,6 +438,86 @@ public class SystemCommandsProcessor extends CommandProcessor {
 		
 	}
 	
+	/**
+	 * Command to copy an existing disk into a new disk.
+	 */
+	private class CloneDiskProcessor implements CommandActionHandler {
+		/**
+		 * Clones the disk, which may be mounted, and adds the copy to
+		 * 	the list of available disks. Free blocks aren't copied.
+		 * @param c command with the names of the disk and of the copy.
+		 * @return message to display to user.
+		 */
+		@Override
+		public ArrayList<String> execute(Command c) {
+			resultsList = new ArrayList<String>(); 
+			FixedLengthCommand fc = (FixedLengthCommand) c;
+			String name = fc.getOperand(1);
+			String copy = fc.getOperand(2);
+			if(copy.length() > 12) {
+				resultsList.add("Disk name is too long");
+				return resultsList;
+			}
+			
+			Mount mount = mounts.get(name);
+			DiskUnit disk = null;
+			try {
+				disk = mount != null ? mount.disk : DiskUnit.mount(name);
+				int copied = disk.cloneTo(copy);
+				diskManager.addDisk(copy, disk.getCapacity(), disk.getBlockSize());
+				resultsList.add(name + " was cloned to " + copy + ": " + copied + " of " 
+						+ disk.getCapacity() + " blocks copied.");
+			} catch (IOException e) {
+				resultsList.add("Unable to clone " + name + ": " + e.getMessage());
+			} catch (Exception e) {
+				resultsList.add(e.getMessage());
+			} finally {
+				if(mount == null && disk != null)
+					disk.shutdown();
+			}
+			return resultsList; 
+		} 
+		
+	}
+	
+	/**
+	 * Command to add blocks to an existing disk.
+	 */
+	private class ResizeDiskProcessor implements CommandActionHandler {
+		/**
+		 * Grows the disk, which may be mounted, and updates its capacity
+		 * 	in the list of available disks.
+		 * @param c command with the name of the disk and its new capacity.
+		 * @return message to display to user.
+		 */
+		@Override
+		public ArrayList<String> execute(Command c) {
+			resultsList = new ArrayList<String>(); 
+			FixedLengthCommand fc = (FixedLengthCommand) c;
+			String name = fc.getOperand(1);
+			int nblocks = Integer.parseInt(fc.getOperand(2));
+			
+			Mount mount = mounts.get(name);
+			DiskUnit disk = null;
+			try {
+				disk = mount != null ? mount.disk : DiskUnit.mount(name);
+				int added = disk.resize(nblocks);
+				diskManager.addDisk(name, disk.getCapacity(), disk.getBlockSize());
+				resultsList.add(name + " now has " + disk.getCapacity() + " blocks, " 
+						+ added + " of them new.");
+			} catch (IOException e) {
+				resultsList.add("Unable to resize " + name + ": " + e.getMessage());
+			} catch (Exception e) {
+				resultsList.add(e.getMessage());
+			} finally {
+				if(mount == null && disk != null)
+					disk.shutdown();
+			}
+			return resultsList; 
+		} 
+		
+	}
+	
 	/**
 	 * Command to delete an existing disk.
 	 */
@@ -217,16 +534,14 @@ public class SystemCommandsProcessor extends CommandProcessor {
 			FixedLengthCommand fc = (FixedLengthCommand) c;
 			String name = fc.getOperand(1);
 			
-			if(dUnit != null && dUnit.getDiskName() != name) {
+			if(mounts.containsKey(name)) {
 				resultsList.add(name + " must be unmounted first.");
 				return resultsList;
 			}
 			
 			try {
 				DiskUnit.deleteDisk(name);
-				DiskManager dManager = new DiskManager();
-				dManager.removeDisk(name);
-				dManager.close();
+				diskManager.removeDisk(name);
 			} catch (Exception e) {
 				resultsList.add(e.getMessage());
 				return resultsList;
@@ -239,12 +554,13 @@ public class SystemCommandsProcessor extends CommandProcessor {
 	}
 	
 	/**
-	 * Command to mount an existing disk and make it usable.
+	 * Command to mount an existing disk.
 	 */
 	private class MountProcessor implements CommandActionHandler {
 		/**
-		 * Mounts the existing disk if no disk is currently
-		 * mounted.
+		 * Mounts the existing disk and makes it the working disk. Disks
+		 * 	mounted before stay mounted, with their working directories
+		 * 	and open files.
 		 * @param c input to be read.
 		 * @return message to display to user.
 		 */
@@ -255,12 +571,13 @@ public class SystemCommandsProcessor extends CommandProcessor {
 			FixedLengthCommand fc = (FixedLengthCommand) c;
 			String name = fc.getOperand(1);
 			
-			if(dUnit != null) {
-				resultsList.add("A disk is already mounted");
+			if(mounts.containsKey(name)) {
+				resultsList.add(name + " is already mounted");
 				return resultsList;
 			}
+			Mount mount = new Mount();
 			try {
-				dUnit = DiskUnit.mount(name);	
+				mount.disk = DiskUnit.mount(name);	
 				resultsList.add(name + " was mounted succesfully");
 			} catch (Exception e) {
 				resultsList.add("Unable to mount " + name );
@@ -269,8 +586,11 @@ public class SystemCommandsProcessor extends CommandProcessor {
 			}
 			
 			//Creates a directory manager and sets up the root directory
-			dirManager = new DirectoryManager(dUnit.getINode(0));
-			currDirectory = new Directory(dUnit, dUnit.getINode(0));
+			mount.dirManager = new DirectoryManager(mount.disk.getINode(0));
+			mount.openFiles = new OpenFileTable(mount.disk);
+			mount.monitor = DiskMonitor.register(mount.disk);
+			mounts.put(name, mount);
+			activate(mount);
 
 			return resultsList; 
 		} 
@@ -278,31 +598,129 @@ public class SystemCommandsProcessor extends CommandProcessor {
 	}
 	
 	/**
-	 * Command to unmount currently mounted disk.
+	 * Command to unmount the working disk or a disk given by name.
 	 */
 	private class UnmountProcessor implements CommandActionHandler {
 		/**
-		 * Unmounts disk if a disk is mounted.
-		 * @param c input to be read.
+		 * Unmounts the disk if it's mounted. When the working disk is
+		 * 	unmounted, another mounted disk, if any, becomes the working disk.
+		 * @param c input to be read, optionally with the name of the disk.
 		 * @return message to display to user.
 		 */
 		@Override
 		public ArrayList<String> execute(Command c) {
 			resultsList = new ArrayList<String>(); 
-			if(dUnit == null) {
-				resultsList.add("No disk is currently mounted.");
+			FixedLengthCommand fc = (FixedLengthCommand) c;
+			String name;
+			if(fc.getNumberOfOperands() > 0)
+				name = fc.getOperand(1);
+			else if(dUnit != null)
+				name = dUnit.getDiskName();
+			else
+				name = null;
+			if(name == null || !mounts.containsKey(name)) {
+				resultsList.add(name == null ? "No disk is currently mounted." 
+						: name + " is not mounted.");
 				return resultsList;
 			}
 
 			try {
-				dUnit.shutdown();
+				unmountDisk(name);
 				resultsList.add("Succesfully unmounted disk.");
 			} catch (Exception e) {
 				resultsList.add("Unable to unmount disk.");
 			}
-			dUnit = null;
-			dirManager = null;
-			currDirectory = null;
+			if(dUnit == null && !mounts.isEmpty()) {
+				activate(mounts.firstEntry().getValue());
+				resultsList.add("Working disk is now " + dUnit.getDiskName());
+			}
+			return resultsList; 
+		} 
+		
+	}
+	
+	/**
+	 * Command to change the working disk to another mounted disk.
+	 */
+	private class UseDiskProcessor implements CommandActionHandler {
+		/**
+		 * Makes the disk the working disk. The working directory of
+		 * 	each disk is kept while other disks are used.
+		 * @param c command with the name of the disk.
+		 * @return message to display to user.
+		 */
+		@Override
+		public ArrayList<String> execute(Command c) {
+			resultsList = new ArrayList<String>(); 
+			FixedLengthCommand fc = (FixedLengthCommand) c;
+			Mount mount = mounts.get(fc.getOperand(1));
+			if(mount == null) {
+				resultsList.add(fc.getOperand(1) + " is not mounted.");
+				return resultsList;
+			}
+			activate(mount);
+			resultsList.add(dUnit.getDiskName() + ":" + dirManager.getDirPath());
+			return resultsList; 
+		} 
+		
+	}
+	
+	/**
+	 * Command to show the mounted disks.
+	 */
+	private class ListMountsProcessor implements CommandActionHandler {
+		/**
+		 * Lists each mounted disk with its size, working directory and 
+		 * 	number of open handles. The working disk is marked with *.
+		 * @param c input to be read.
+		 * @return message to display to user.
+		 */
+		@Override
+		public ArrayList<String> execute(Command c) {
+			resultsList = new ArrayList<String>(); 
+			if(mounts.isEmpty()) {
+				resultsList.add("No disk is currently mounted.");
+				return resultsList;
+			}
+			for(Mount m : mounts.values()) {
+				resultsList.add(String.format("%s %-12s %8d %6d  %-24s %d open", 
+						m.disk == dUnit ? "*" : " ", m.disk.getDiskName(), m.disk.getCapacity(), 
+						m.disk.getBlockSize(), m.dirManager.getDirPath(), m.openFiles.getHandles().size()));
+			}
+			return resultsList; 
+		} 
+		
+	}
+	
+	/**
+	 * Command to show the free space of the mounted disks.
+	 */
+	private class DiskFreeProcessor implements CommandActionHandler {
+		/**
+		 * Lists the used and free blocks and I-Nodes of each mounted 
+		 * 	disk. The counts are kept by the disks, so nothing is read.
+		 * @param c input to be read.
+		 * @return message to display to user.
+		 */
+		@Override
+		public ArrayList<String> execute(Command c) {
+			resultsList = new ArrayList<String>(); 
+			if(mounts.isEmpty()) {
+				resultsList.add("No disk is currently mounted.");
+				return resultsList;
+			}
+			resultsList.add(String.format("%-12s %10s %10s %10s %5s %10s %10s %10s", "disk", 
+					"blocks", "used", "free", "use%", "I-Nodes", "used", "free"));
+			for(Mount m : mounts.values()) {
+				DiskUnit disk = m.disk;
+				int blocks = disk.getCapacity();
+				int free = disk.getFreeBlockCount();
+				int nodes = disk.getNumOfINodes();
+				int freeNodes = disk.getFreeINodeCount();
+				resultsList.add(String.format("%-12s %10d %10d %10d %4d%% %10d %10d %10d", 
+						disk.getDiskName(), blocks, blocks - free, free, 
+						(int) ((blocks - free) * 100L / blocks), nodes, nodes - freeNodes, freeNodes));
+			}
 			return resultsList; 
 		} 
 		
@@ -343,10 +761,22 @@ public class SystemCommandsProcessor extends CommandProcessor {
 				DataFile file = new DataFile(dUnit);
 				
 				if(currDirectory.getFileNode(name) != null) {
+					if(openFiles.isOpen(currDirectory.getFileNode(name))) {
+						resultsList.add(name + " is open.");
+						return resultsList;
+					}
+					//The blocks of the old contents are freed first
 					file = new DataFile(dUnit, currDirectory.getFileNode(name));
+					int blocks = file.getBlocksNeeded(data.length()) - file.getAllBlocks().length;
+					if(!dUnit.checkIfEnoughSpace(blocks, 0)) {
+						resultsList.add("Not enough space in disk");
+						return resultsList;
+					}
 					file.overwriteFile(data);
 				} else {
-					if(!dUnit.checkIfEnoughSpace(data.length()/(dUnit.getBlockSize()-4) + 1)) {
+					int blocks = file.getBlocksNeeded(data.length()) 
+							+ currDirectory.getBlocksNeededToAdd();
+					if(!dUnit.checkIfEnoughSpace(blocks, 1)) {
 						resultsList.add("Not enough space in disk");
 						return resultsList;
 					}
@@ -357,6 +787,9 @@ public class SystemCommandsProcessor extends CommandProcessor {
 			} catch (IOException e) {
 				resultsList.add(e.getMessage());
 				return resultsList;
+			} catch (InvalidParameterException e) {
+				resultsList.add(e.getMessage());
+				return resultsList;
 			}
 			
 			resultsList.add("Copied " + filename + " to " + dUnit.getDiskName());
@@ -393,7 +826,7 @@ public class SystemCommandsProcessor extends CommandProcessor {
 			}
 			try {
 				INode targetINode = currDirectory.getFileNode(fc.getOperand(1));
-				DataFile oldFile = new DataFile(dUnit, targetINode);
+				DataFile oldFile = openFiles.getFile(targetINode);
 				DataFile newFile = new DataFile(dUnit);
 				newFile.createFile(oldFile.readFile());
 				currDirectory.addFile(name, newFile.getFileNode().getNodeIndex());
@@ -409,6 +842,67 @@ public class SystemCommandsProcessor extends CommandProcessor {
 		
 	}
 	
+	/**
+	 * Command to copy a data file to any mounted disk, given paths
+	 * 	like disk:/folder/name.
+	 */
+	private class DiskCopyProcessor implements CommandActionHandler {
+		/**
+		 * Copies the file by streaming its blocks from the source disk
+		 * 	into a new file of the target disk, without loading the whole
+		 * 	file into memory.
+		 * @param c command with the source and target paths.
+		 * @return message to display to user.
+		 */
+		@Override
+		public ArrayList<String> execute(Command c) {
+			
+			resultsList = new ArrayList<String>(); 
+			FixedLengthCommand fc = (FixedLengthCommand) c;
+			try {
+				Location src = resolve(fc.getOperand(1));
+				Location dst = resolve(fc.getOperand(2));
+				INode node = src.dir.getFileNode(src.name);
+				if(node == null || node.getType() == INode.DIRECTORY) {
+					resultsList.add("No such data file: " + fc.getOperand(1));
+					return resultsList;
+				}
+				if(dst.name.length() > 20) {
+					resultsList.add("Name is too long.");
+					return resultsList;
+				}
+				if(dst.dir.getFileNode(dst.name) != null) {
+					resultsList.add("File with that name already exists in folder");
+					return resultsList;
+				}
+				
+				DataFile source = src.mount.openFiles.getFile(node);
+				DataFile target = new DataFile(dst.mount.disk);
+				int blocks = dst.dir.getBlocksNeededToAdd();
+				if(source.getLength() >= 0)
+					blocks += target.getBlocksNeeded(source.getLength());
+				if(!dst.mount.disk.checkIfEnoughSpace(blocks, 1)) {
+					resultsList.add("Not enough space in " + dst.mount.disk.getDiskName());
+					return resultsList;
+				}
+				long bytes = target.copyFrom(source);
+				dst.dir.addFile(dst.name, target.getFileNode().getNodeIndex());
+				if(dst.mount.disk == dUnit) {
+					//The working directory may be the folder that changed
+					currDirectory = new Directory(dUnit, 
+							dUnit.getINode(currDirectory.getDirNode().getNodeIndex()));
+				}
+				resultsList.add("Copied " + bytes + " bytes to " + fc.getOperand(2));
+			} catch (IOException e) {
+				resultsList.add("Unable to copy: " + e.getMessage());
+			} catch (RuntimeException e) {
+				resultsList.add(e.getMessage());
+			}
+			return resultsList; 
+		} 
+		
+	}
+	
 	/**
 	 * Command to show the files in the current working directory 
 	 * 	of the disk.
@@ -416,7 +910,8 @@ public class SystemCommandsProcessor extends CommandProcessor {
 	private class ListFilesProcessor implements CommandActionHandler {
 		/**
 		 * Reads the directory file and displays the file names,
-		 * 	sizes and file types.
+		 * 	sizes and file types. Sizes come from the I-Nodes, so
+		 * 	no data blocks are read.
 		 * @param c input to be read.
 		 * @return message to display to user.
 		 */
@@ -430,7 +925,71 @@ public class SystemCommandsProcessor extends CommandProcessor {
 				return resultsList;
 			}
 			
-			return currDirectory.getFiles(); 
+			ArrayList<String> names = currDirectory.getFiles();
+			ArrayList<INode> nodes = currDirectory.getFileNodes();
+			if(nodes.isEmpty())
+				return names;
+			for(int i = 0; i < nodes.size(); i++) {
+				INode node = nodes.get(i);
+				String size;
+				if(node.getType() == INode.DIRECTORY)
+					size = "<dir>";
+				else if(node.getLength() < 0)
+					size = "-";
+				else
+					size = String.valueOf(node.getLength());
+				resultsList.add(String.format("%-20s %12s", names.get(i).trim(), size));
+			}
+			return resultsList; 
+		} 
+		
+	}
+	
+	/**
+	 * Command to show the information stored in the I-Node of a file.
+	 */
+	private class StatFileProcessor implements CommandActionHandler {
+		/**
+		 * Looks for the file in the working directory and displays its
+		 * 	type, I-Node, length and number of blocks.
+		 * @param c command with the name of the file.
+		 * @return message to display to user.
+		 */
+		@Override
+		public ArrayList<String> execute(Command c) {
+			
+			resultsList = new ArrayList<String>(); 
+			if(dUnit == null) {
+				resultsList.add("No disk is currently mounted.");
+				return resultsList;
+			}
+			
+			FixedLengthCommand fc = (FixedLengthCommand) c;
+			String name = fc.getOperand(1);
+			INode node = currDirectory.getFileNode(name);
+			if(node == null) {
+				resultsList.add("No such file in current directory.");
+				return resultsList;
+			}
+			
+			String type;
+			if(node.getType() == INode.DIRECTORY)
+				type = "directory";
+			else if(node.getType() == INode.EXTENT_FILE)
+				type = "extent data file";
+			else
+				type = "data file";
+			
+			resultsList.add("File: " + name);
+			resultsList.add("Type: " + type);
+			resultsList.add("I-Node: " + node.getNodeIndex());
+			if(node.getType() != INode.DIRECTORY) {
+				long length = openFiles.getFile(node).getLength();
+				resultsList.add("Size: " + (length < 0 ? "unknown" : length + " bytes"));
+			}
+			resultsList.add("Blocks: " + node.getSize());
+			resultsList.add("Root block: " + node.getBlockIndex());
+			return resultsList; 
 		} 
 		
 	}
@@ -460,7 +1019,7 @@ public class SystemCommandsProcessor extends CommandProcessor {
 			
 			try {
 				INode fileNode = currDirectory.getFileNode(name);
-				DataFile file = new DataFile(dUnit, fileNode);
+				DataFile file = openFiles.getFile(fileNode);
 				String contents = file.readFile();
 				int length = contents.length()/48;
 				if(contents.length() % 48 != 0)
@@ -509,8 +1068,10 @@ public class SystemCommandsProcessor extends CommandProcessor {
 			
 			if(name.equals("..") && dirManager.getCurrentDirectoryName() != "root") {
 				dirManager.removeDirFromPath();
-				currDirectory = new Directory(dUnit, dirManager.getCurrentDirectoryNode());
-			} else if(dirNode == null || dirNode.getType() == (byte) 0) {
+				//The folder may have grown since its I-Node was read
+				currDirectory = new Directory(dUnit, 
+						dUnit.getINode(dirManager.getCurrentDirectoryNode().getNodeIndex()));
+			} else if(dirNode == null || dirNode.getType() != INode.DIRECTORY) {
 				resultsList.add("No such folder in current directory.");
 				return resultsList;
 			} else {
@@ -598,7 +1159,7 @@ public class SystemCommandsProcessor extends CommandProcessor {
 			if(node == null) {
 				resultsList.add("No such directory in current directory");
 				return resultsList;
-			} else if(node.getType() == (byte) 0) {
+			} else if(node.getType() != INode.DIRECTORY) {
 				resultsList.add("Name corresponds to a data file.");
 				return resultsList;
 			} else if(node.getSize() != 0) {
@@ -627,9 +1188,17 @@ public class SystemCommandsProcessor extends CommandProcessor {
 	 *
 	 */
 	private class RecRemoveDirectoryProcessor implements CommandActionHandler {
+		private int[] blocks;						// blocks of the folder tree
+		private int numBlocks;
+		private ArrayList<INode> nodes;				// I-Nodes of the folder tree
+		private ArrayList<INode> openNodes;			// open files, deleted when closed
 
 		/**
-		 * Executes the command by deleting the folder if its found.
+		 * Executes the command by deleting the folder if its found. The
+		 * 	whole tree is walked first to collect its I-Nodes and blocks 
+		 * 	without changing the disk, reading each folder once; then the
+		 * 	folder is removed from the working directory and everything
+		 * 	collected is released at once.
 		 * @param c command with name of folder to delete
 		 * @return if command was executed properly or not
 		 */
@@ -651,40 +1220,69 @@ public class SystemCommandsProcessor extends CommandProcessor {
 					resultsList.add("No such folder in current directory.");
 					return resultsList;
 				}
-				
-				this.deleteFolder(new Directory(dUnit, node));
-				currDirectory.removeFile(name);
-				
 			} catch (FileNotFoundException e) {
 				resultsList.add(e.getMessage());
+				return resultsList;
 			}
-			return resultsList; 
-		} 
-		
-		/**
-		 * Recursively deletes the desired folder and all its contents. 
-		 * @param dir directory to delete.
-		 */
-		private void deleteFolder(Directory dir) {
 			
-			ArrayList<String> filesList = dir.getFiles();
+			blocks = new int[64];
+			numBlocks = 0;
+			nodes = new ArrayList<INode>();
+			openNodes = new ArrayList<INode>();
 			try {
-				for(int i = 0; i < filesList.size(); i++) {
-					INode node = dir.getFileNode(filesList.get(i));
-					if(dir.isFileDirectory(filesList.get(i))) {
-						this.deleteFolder(new Directory(dUnit, node));
-						dir.removeFile(filesList.get(i));
-					} else {
-						DataFile file = new DataFile(dUnit, node);
-						file.deleteFile();
-						dir.removeFile(filesList.get(i));
-					}
-				}
-				dir.deleteDir();
+				this.collectTree(node);
+			} catch (RuntimeException e) {
+				resultsList.add(e.getMessage());
+				return resultsList;
+			}
+			
+			try {
+				currDirectory.removeFile(name);
 			} catch (FileNotFoundException e) {
 				resultsList.add(e.getMessage());
+				return resultsList;
+			}
+			for(INode open : openNodes) {
+				openFiles.delete(open);
+			}
+			for(INode freed : nodes) {
+				dUnit.setFirstFreeINode(freed);
+			}
+			dUnit.registerFBs(blocks, numBlocks);
+			return resultsList; 
+		} 
+		
+		/**
+		 * Lists each folder of the tree once, collecting its data files 
+		 * 	and the folder itself.
+		 */
+		private void collectTree(INode root) {
+			ArrayDeque<INode> folders = new ArrayDeque<INode>();
+			folders.push(root);
+			while(!folders.isEmpty()) {
+				INode node = folders.pop();
+				Directory dir = new Directory(dUnit, node);
+				for(INode file : dir.getFileNodes()) {
+					if(file.getType() == INode.DIRECTORY)
+						folders.push(file);
+					else if(openFiles.isOpen(file))
+						openNodes.add(file);
+					else
+						this.collect(file, new DataFile(dUnit, file).getAllBlocks());
+				}
+				this.collect(node, dir.getAllBlocks());
 			}
-
+		}
+		
+		/**
+		 * Adds a file of the tree and its blocks to the ones to release.
+		 */
+		private void collect(INode node, int[] fileBlocks) {
+			if(numBlocks + fileBlocks.length > blocks.length)
+				blocks = Arrays.copyOf(blocks, Math.max(blocks.length * 2, numBlocks + fileBlocks.length));
+			System.arraycopy(fileBlocks, 0, blocks, numBlocks, fileBlocks.length);
+			numBlocks += fileBlocks.length;
+			nodes.add(node);
 		}
 		
 	}
@@ -720,8 +1318,7 @@ public class SystemCommandsProcessor extends CommandProcessor {
 				if(fileNode == null || fileNode.getType() == (byte) 1)
 					resultsList.add("No such data file in directory.");
 				else {
-					DataFile file = new DataFile(dUnit, fileNode);
-					file.deleteFile();
+					openFiles.delete(fileNode);
 					currDirectory.removeFile(name);
 				}
 				
@@ -834,15 +1431,851 @@ public class SystemCommandsProcessor extends CommandProcessor {
 				else if(fileNode.getType() == (byte) 1)
 					resultsList.add("File is a directory");
 				else {
-					DataFile file = new DataFile(dUnit, fileNode);
+					DataFile file = openFiles.getFile(fileNode);
 					file.appendFile(data);
 				}
 				
 			} catch (IOException e) {
 				resultsList.add(e.getMessage());
+			} catch (InvalidParameterException e) {
+				resultsList.add(e.getMessage());
+			}
+			
+			
+			return resultsList; 
+		} 
+		
+	}
+	
+	/**
+	 * Command to copy a data file of the mounted disk to the host system.
+	 */
+	private class ExportFileProcessor implements CommandActionHandler {
+
+		/**
+		 * Executes the command by writing the contents of the file to
+		 * 	the external file, replacing it if it exists. Contents go 
+		 * 	from the disk to the external file without being loaded
+		 * 	into memory.
+		 * @param c command with the name of the file and the external path.
+		 * @return message to display to user.
+		 */
+		@Override
+		public ArrayList<String> execute(Command c) {
+			
+			resultsList = new ArrayList<String>(); 
+			if(dUnit == null) {
+				resultsList.add("No disk is currently mounted.");
+				return resultsList;
+			}
+			
+			FixedLengthCommand fc = (FixedLengthCommand) c;
+			String name = fc.getOperand(1);
+			String path = fc.getOperand(2);
+			INode fileNode = currDirectory.getFileNode(name);
+			
+			if(fileNode == null || fileNode.getType() == INode.DIRECTORY) {
+				resultsList.add("No such data file in directory.");
+				return resultsList;
+			}
+			FileOutputStream out = null;
+			try {
+				out = new FileOutputStream(path);
+				long n = openFiles.getFile(fileNode).transferTo(out.getChannel());
+				resultsList.add("Exported " + n + " bytes of " + name + " to " + path);
+			} catch (IOException e) {
+				resultsList.add("Unable to export " + name + ": " + e.getMessage());
+			} finally {
+				try {
+					if(out != null)
+						out.close();
+				} catch (IOException e) {
+					resultsList.add(e.getMessage());
+				}
+			}
+			return resultsList; 
+		} 
+		
+	}
+	
+	/**
+	 * Command to copy a folder of the mounted disk, with all its files
+	 * 	and subfolders, to the host system.
+	 */
+	private class ExportDirectoryProcessor implements CommandActionHandler {
+		private ExecutorService workers;
+		private ConcurrentLinkedQueue<String> errors;
+		private AtomicInteger files;
+		private int tasks;							// submitted tasks not finished yet
+
+		/**
+		 * Executes the command by recreating the folder tree under the
+		 * 	host path. A bounded pool of threads lists the folders and
+		 * 	writes the files; each file goes from the disk to its host
+		 * 	file without being loaded into memory.
+		 * @param c command with the name of the folder and the host path.
+		 * @return message to display to user.
+		 */
+		@Override
+		public ArrayList<String> execute(Command c) {
+			
+			resultsList = new ArrayList<String>(); 
+			if(dUnit == null) {
+				resultsList.add("No disk is currently mounted.");
+				return resultsList;
+			}
+			
+			FixedLengthCommand fc = (FixedLengthCommand) c;
+			String name = fc.getOperand(1);
+			File hostDir = new File(fc.getOperand(2));
+			INode node = currDirectory.getFileNode(name);
+			if(node == null || node.getType() != INode.DIRECTORY) {
+				resultsList.add("No such folder in current directory.");
+				return resultsList;
+			}
+			
+			workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+			errors = new ConcurrentLinkedQueue<String>();
+			files = new AtomicInteger();
+			tasks = 0;
+			this.submit(new FolderTask(node, hostDir));
+			try {
+				synchronized(this) {
+					while(tasks > 0) {
+						this.wait();
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				errors.add("Export was interrupted.");
+			} finally {
+				workers.shutdownNow();
+			}
+			resultsList.addAll(errors);
+			resultsList.add("Exported " + files.get() + " files of " + name + " to " + hostDir.getPath());
+			return resultsList; 
+		} 
+		
+		/**
+		 * Runs a task in the pool and counts it until it ends.
+		 */
+		private synchronized void submit(final Runnable task) {
+			tasks++;
+			workers.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						task.run();
+					} catch (RuntimeException e) {
+						errors.add(e.getMessage());
+					} finally {
+						finished();
+					}
+				}
+			});
+		}
+		
+		private synchronized void finished() {
+			if(--tasks == 0)
+				this.notifyAll();
+		}
+		
+		/**
+		 * Creates the host folder of a disk folder and submits a task for
+		 * 	each of its files and subfolders.
+		 */
+		private class FolderTask implements Runnable {
+			private INode node;
+			private File hostDir;
+			
+			private FolderTask(INode node, File hostDir) {
+				this.node = node;
+				this.hostDir = hostDir;
+			}
+			
+			@Override
+			public void run() {
+				if(!hostDir.isDirectory() && !hostDir.mkdirs()) {
+					errors.add("Unable to create " + hostDir.getPath());
+					return;
+				}
+				if(node.getSize() == 0)
+					return;
+				Directory dir = new Directory(dUnit, node);
+				ArrayList<String> names = dir.getFiles();
+				ArrayList<INode> nodes = dir.getFileNodes();
+				for(int i = 0; i < nodes.size(); i++) {
+					File host = new File(hostDir, names.get(i).trim());
+					if(nodes.get(i).getType() == INode.DIRECTORY)
+						submit(new FolderTask(nodes.get(i), host));
+					else
+						submit(new FileTask(nodes.get(i), host));
+				}
+			}
+		}
+		
+		/**
+		 * Writes a data file of the disk to its host file.
+		 */
+		private class FileTask implements Runnable {
+			private INode node;
+			private File host;
+			
+			private FileTask(INode node, File host) {
+				this.node = node;
+				this.host = host;
+			}
+			
+			@Override
+			public void run() {
+				FileOutputStream out = null;
+				try {
+					out = new FileOutputStream(host);
+					openFiles.getFile(node).transferTo(out.getChannel());
+					files.incrementAndGet();
+				} catch (IOException e) {
+					errors.add("Unable to export " + host.getPath() + ": " + e.getMessage());
+				} finally {
+					try {
+						if(out != null)
+							out.close();
+					} catch (IOException e) {
+						errors.add(e.getMessage());
+					}
+				}
+			}
+		}
+		
+	}
+	
+	/**
+	 * Command to copy a folder of the host system, with all its files
+	 * 	and subfolders, into the mounted disk.
+	 */
+	private class ImportProcessor implements CommandActionHandler {
+		private static final int READS_AHEAD = 64;		// host files read but not yet stored
+		
+		private ArrayList<File> reads;
+		private ArrayDeque<Future<byte[]>> pending;
+		private ExecutorService readers;
+		private int nextRead;
+		private int filesImported;
+		private int foldersImported;
+
+		/**
+		 * Executes the command by mirroring the host folder into the 
+		 * 	working directory, or into a new folder with the given name.
+		 * 	The whole tree is measured first and nothing is written unless
+		 * 	the disk has enough free blocks and I-Nodes for it and every 
+		 * 	folder can hold its entries. Host files
+		 * 	are read in parallel while the disk is written in order, and 
+		 * 	each folder gets all its entries at once.
+		 * @param c command with the host path and optionally a folder name.
+		 * @return message to display to user.
+		 */
+		@Override
+		public ArrayList<String> execute(Command c) {
+			
+			resultsList = new ArrayList<String>(); 
+			if(dUnit == null) {
+				resultsList.add("No disk is currently mounted.");
+				return resultsList;
+			}
+			
+			FixedLengthCommand fc = (FixedLengthCommand) c;
+			File hostDir = new File(fc.getOperand(1));
+			String target = fc.getNumberOfOperands() > 1 ? fc.getOperand(2) : null;
+			if(!hostDir.isDirectory()) {
+				resultsList.add(fc.getOperand(1) + " is not a folder.");
+				return resultsList;
+			}
+			if(target != null && target.length() > 20) {
+				resultsList.add("Name is too long");
+				return resultsList;
+			}
+			if(target != null && currDirectory.getFileNode(target) != null) {
+				resultsList.add("File with that name already exists in folder");
+				return resultsList;
+			}
+			
+			//Measure the tree before anything is written
+			reads = new ArrayList<File>();
+			HostFolder top = this.scan(hostDir, target == null ? currDirectory : null);
+			long blocks = 0;
+			int nodes = 0;
+			Directory dirSizer = new Directory(dUnit);
+			DataFile fileSizer = new DataFile(dUnit);
+			for(HostFolder folder : top.getTree(new ArrayList<HostFolder>())) {
+				int entries = folder.files.size() + folder.folders.size();
+				int room = dirSizer.getMaxFiles();
+				if(folder == top && target == null)
+					room -= currDirectory.getFileCount();
+				if(entries > room) {
+					resultsList.add("Too many files: " + folder.name + " has " + entries 
+							+ " and its folder can only take " + room + " more.");
+					return resultsList;
+				}
+				blocks += dirSizer.getBlocksNeeded(entries);
+				if(folder != top || target != null)
+					nodes++;
+				for(File file : folder.files) {
+					blocks += fileSizer.getBlocksNeeded(file.length());
+					nodes++;
+				}
+			}
+			if(!dUnit.checkIfEnoughSpace(blocks, nodes)) {
+				resultsList.add("Not enough space in disk: the import needs " + blocks 
+						+ " blocks and " + nodes + " I-Nodes.");
+				return resultsList;
+			}
+			
+			readers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+			pending = new ArrayDeque<Future<byte[]>>();
+			nextRead = 0;
+			filesImported = 0;
+			foldersImported = 0;
+			try {
+				while(nextRead < reads.size() && pending.size() < READS_AHEAD) {
+					this.readNext();
+				}
+				if(target == null) 
+					this.importFolder(top, currDirectory);
+				else {
+					Directory dir = new Directory(dUnit);
+					dir.createDir(target);
+					boolean stored = false;
+					try {
+						this.importFolder(top, dir);
+						currDirectory.addFile(target, dir.getDirNode().getNodeIndex());
+						stored = true;
+					} finally {
+						if(!stored) {
+							ArrayList<Integer> created = new ArrayList<Integer>();
+							created.add(dir.getDirNode().getNodeIndex());
+							currDirectory.removeLastFiles(created);
+							this.discard(dir.getDirNode());
+						}
+					}
+					foldersImported++;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				resultsList.add("Import was interrupted.");
+				filesImported = 0;
+				foldersImported = 0;
+			} catch (RuntimeException e) {
+				resultsList.add(e.getMessage());
+				filesImported = 0;
+				foldersImported = 0;
+			} finally {
+				readers.shutdownNow();
+			}
+			resultsList.add("Imported " + filesImported + " files and " + foldersImported 
+					+ " folders from " + hostDir.getPath());
+			return resultsList; 
+		} 
+		
+		/**
+		 * Builds the model of a host folder. Files and folders whose names 
+		 * 	can't be used in the disk are skipped, as well as names already
+		 * 	in the disk folder they would be added to.
+		 * @param hostDir host folder.
+		 * @param existing disk folder the contents are added to if it 
+		 * 	already exists, or null.
+		 * @return the model of the folder.
+		 */
+		private HostFolder scan(File hostDir, Directory existing) {
+			HostFolder folder = new HostFolder(hostDir.getName());
+			File[] children = hostDir.listFiles();
+			if(children == null) {
+				resultsList.add("Unable to list " + hostDir.getPath());
+				return folder;
+			}
+			Arrays.sort(children);
+			ArrayList<File> subFolders = new ArrayList<File>();
+			for(File child : children) {
+				String name = child.getName();
+				if(name.length() > 20 || !SimpleOperandHandler.isValidToken("name", name)
+						|| (existing != null && existing.getFileNode(name) != null)) {
+					resultsList.add("Skipped " + child.getPath());
+				} else if(child.isDirectory()) {
+					subFolders.add(child);
+				} else if(child.isFile()) {
+					try {
+						new DataFile(dUnit).getBlocksNeeded(child.length());
+						folder.files.add(child);
+						reads.add(child);
+					} catch (InvalidParameterException e) {
+						resultsList.add("Skipped " + child.getPath() + ": " + e.getMessage());
+					}
+				}
+			}
+			//Files are read in the order importFolder stores them
+			for(File child : subFolders) {
+				folder.folders.add(this.scan(child, null));
+			}
+			return folder;
+		}
+		
+		/**
+		 * Stores the files of a host folder and, recursively, its folders,
+		 * 	then adds all their entries to the disk folder at once. Files
+		 * 	are taken in the same order they were scanned. If anything fails,
+		 * 	adding the entries included, the entries already written are 
+		 * 	removed and the files and folders created for them are deleted.
+		 * @param folder model of the host folder.
+		 * @param dir disk folder that receives its contents.
+		 */
+		private void importFolder(HostFolder folder, Directory dir) throws InterruptedException {
+			ArrayList<String> names = new ArrayList<String>();
+			ArrayList<Integer> nodes = new ArrayList<Integer>();
+			boolean stored = false;
+			
+			try {
+				for(File file : folder.files) {
+					byte[] data;
+					try {
+						data = pending.remove().get();
+					} catch (ExecutionException e) {
+						resultsList.add("Unable to read " + file.getPath());
+						continue;
+					} finally {
+						if(nextRead < reads.size())
+							this.readNext();
+					}
+					DataFile newFile = new DataFile(dUnit);
+					newFile.createFile(new String(data, StandardCharsets.ISO_8859_1));
+					names.add(file.getName());
+					nodes.add(newFile.getFileNode().getNodeIndex());
+					filesImported++;
+				}
+				for(HostFolder sub : folder.folders) {
+					Directory subDir = new Directory(dUnit);
+					subDir.createDir(sub.name);
+					//Listed before its contents, so it's deleted if they fail
+					names.add(sub.name);
+					nodes.add(subDir.getDirNode().getNodeIndex());
+					this.importFolder(sub, subDir);
+					foldersImported++;
+				}
+				dir.addFiles(names, nodes);
+				stored = true;
+			} finally {
+				if(!stored) {
+					//Entries addFiles wrote before it failed are removed first
+					dir.removeLastFiles(nodes);
+					for(int i = nodes.size() - 1; i >= 0; i--) {
+						this.discard(dUnit.getINode(nodes.get(i)));
+					}
+				}
+			}
+		}
+		
+		/**
+		 * Deletes a file or folder created by the import, with everything
+		 * 	in it, returning its blocks and I-Node to the disk.
+		 * @param node I-Node of the file or folder.
+		 */
+		private void discard(INode node) {
+			if(node.getType() != INode.DIRECTORY) {
+				new DataFile(dUnit, node).deleteFile();
+				return;
+			}
+			Directory dir = new Directory(dUnit, node);
+			ArrayList<INode> children = dir.getFileNodes();
+			for(int i = children.size() - 1; i >= 0; i--) {
+				this.discard(children.get(i));
+			}
+			int[] blocks = dir.getAllBlocks();
+			dUnit.registerFBs(blocks, blocks.length);
+			dUnit.setFirstFreeINode(node);
+		}
+		
+		/**
+		 * Starts reading the next host file in the background.
+		 */
+		private void readNext() {
+			final File file = reads.get(nextRead++);
+			pending.add(readers.submit(new Callable<byte[]>() {
+				@Override
+				public byte[] call() throws IOException {
+					return Files.readAllBytes(file.toPath());
+				}
+			}));
+		}
+		
+		/**
+		 * Model of a host folder to import.
+		 */
+		private class HostFolder {
+			private String name;
+			private ArrayList<File> files;
+			private ArrayList<HostFolder> folders;
+			
+			private HostFolder(String name) {
+				this.name = name;
+				files = new ArrayList<File>();
+				folders = new ArrayList<HostFolder>();
+			}
+			
+			/**
+			 * @param list list where the folders are added.
+			 * @return this folder and all the folders inside it.
+			 */
+			private ArrayList<HostFolder> getTree(ArrayList<HostFolder> list) {
+				list.add(this);
+				for(HostFolder sub : folders) {
+					sub.getTree(list);
+				}
+				return list;
+			}
+		}
+		
+	}
+	
+	/**
+	 * Command to change the length of an existing data file.
+	 */
+	private class TruncateFileProcessor implements CommandActionHandler {
+
+		/**
+		 * Executes the command by cutting the file at the given size, 
+		 * 	freeing only the blocks past it, or by extending it with zeros.
+		 * @param c command with name of the file and its new size in bytes.
+		 * @return message to display to user.
+		 */
+		@Override
+		public ArrayList<String> execute(Command c) {
+			
+			resultsList = new ArrayList<String>(); 
+			if(dUnit == null) {
+				resultsList.add("No disk is currently mounted.");
+				return resultsList;
+			}
+			
+			FixedLengthCommand fc = (FixedLengthCommand) c;
+			String name = fc.getOperand(1);
+			int size = Integer.parseInt(fc.getOperand(2));
+			INode fileNode = currDirectory.getFileNode(name);
+			
+			if(fileNode == null || fileNode.getType() == INode.DIRECTORY) {
+				resultsList.add("No such data file in directory.");
+				return resultsList;
+			}
+			try {
+				DataFile file = openFiles.getFile(fileNode);
+				file.truncate(size);
+				resultsList.add(name + " is now " + size + " bytes long.");
+			} catch (RuntimeException e) {
+				resultsList.add(e.getMessage());
+			}
+			
+			return resultsList; 
+		} 
+		
+	}
+	
+	/**
+	 * Command to choose the format of the files created in the mounted disk.
+	 */
+	private class FileFormatProcessor implements CommandActionHandler {
+
+		/**
+		 * Sets the disk to create "extent" files, mapped by runs of 
+		 * 	consecutive blocks, or "indexed" files, mapped by direct
+		 * 	and indirect block indexes. Existing files keep their format.
+		 * @param c command with the name of the format.
+		 * @return message to display to user.
+		 */
+		@Override
+		public ArrayList<String> execute(Command c) {
+			
+			resultsList = new ArrayList<String>(); 
+			if(dUnit == null) {
+				resultsList.add("No disk is currently mounted.");
+				return resultsList;
+			}
+			
+			FixedLengthCommand fc = (FixedLengthCommand) c;
+			String format = fc.getOperand(1);
+			
+			if(format.equals("extent"))
+				dUnit.setUsesExtents(true);
+			else if(format.equals("indexed"))
+				dUnit.setUsesExtents(false);
+			else {
+				resultsList.add("Unknown format, use extent or indexed.");
+				return resultsList;
+			}
+			resultsList.add("New files in " + dUnit.getDiskName() + " will be " + format + " files.");
+			return resultsList; 
+		} 
+		
+	}
+	
+	/**
+	 * Command to open a data file for repeated reads and writes.
+	 */
+	private class OpenFileProcessor implements CommandActionHandler {
+
+		/**
+		 * Opens the file in the working directory and shows the number
+		 * 	of its new handle, positioned at the beginning of the file.
+		 * @param c command with the name of the file.
+		 * @return message to display to user.
+		 */
+		@Override
+		public ArrayList<String> execute(Command c) {
+			
+			resultsList = new ArrayList<String>(); 
+			if(dUnit == null) {
+				resultsList.add("No disk is currently mounted.");
+				return resultsList;
+			}
+			
+			FixedLengthCommand fc = (FixedLengthCommand) c;
+			String name = fc.getOperand(1);
+			INode fileNode = currDirectory.getFileNode(name);
+			
+			if(fileNode == null || fileNode.getType() == INode.DIRECTORY) {
+				resultsList.add("No such data file in directory.");
+				return resultsList;
+			}
+			FileHandle handle = openFiles.open(name, fileNode);
+			resultsList.add(name + " is open as handle " + handle.getId() + ".");
+			return resultsList; 
+		} 
+		
+	}
+	
+	/**
+	 * Command to close a handle of an open file.
+	 */
+	private class CloseFileProcessor implements CommandActionHandler {
+
+		/**
+		 * Closes the handle. A file removed while open is deleted
+		 * 	when its last handle is closed.
+		 * @param c command with the number of the handle.
+		 * @return message to display to user.
+		 */
+		@Override
+		public ArrayList<String> execute(Command c) {
+			
+			resultsList = new ArrayList<String>(); 
+			if(dUnit == null) {
+				resultsList.add("No disk is currently mounted.");
+				return resultsList;
+			}
+			
+			FixedLengthCommand fc = (FixedLengthCommand) c;
+			int id = Integer.parseInt(fc.getOperand(1));
+			try {
+				openFiles.close(id);
+				resultsList.add("Handle " + id + " was closed.");
+			} catch (RuntimeException e) {
+				resultsList.add(e.getMessage());
+			}
+			return resultsList; 
+		} 
+		
+	}
+	
+	/**
+	 * Command to read from the position of a handle.
+	 */
+	private class ReadHandleProcessor implements CommandActionHandler {
+
+		/**
+		 * Displays up to the given number of bytes from the handle's 
+		 * 	position and moves the handle past them.
+		 * @param c command with the number of the handle and of bytes.
+		 * @return bytes read, in lines of 48 characters.
+		 */
+		@Override
+		public ArrayList<String> execute(Command c) {
+			
+			resultsList = new ArrayList<String>(); 
+			if(dUnit == null) {
+				resultsList.add("No disk is currently mounted.");
+				return resultsList;
+			}
+			
+			FixedLengthCommand fc = (FixedLengthCommand) c;
+			int id = Integer.parseInt(fc.getOperand(1));
+			int size = Integer.parseInt(fc.getOperand(2));
+			try {
+				if(size < 0) {
+					resultsList.add("Invalid size = " + size);
+					return resultsList;
+				}
+				String contents = openFiles.getHandle(id).read(size);
+				if(contents.isEmpty())
+					resultsList.add("End of file.");
+				for(int i = 0; i < contents.length(); i += 48) {
+					resultsList.add(contents.substring(i, Math.min(contents.length(), i + 48)));
+				}
+			} catch (RuntimeException e) {
+				resultsList.add(e.getMessage());
+			}
+			return resultsList; 
+		} 
+		
+	}
+	
+	/**
+	 * Command to write an external file at the position of a handle.
+	 */
+	private class WriteHandleProcessor implements CommandActionHandler {
+
+		/**
+		 * Writes the contents of the external file at the handle's 
+		 * 	position, replacing the bytes there and growing the file
+		 * 	if needed, and moves the handle past them.
+		 * @param c command with the number of the handle and the
+		 * 	name of the external file.
+		 * @return message to display to user.
+		 */
+		@Override
+		public ArrayList<String> execute(Command c) {
+			
+			resultsList = new ArrayList<String>(); 
+			if(dUnit == null) {
+				resultsList.add("No disk is currently mounted.");
+				return resultsList;
+			}
+			
+			FixedLengthCommand fc = (FixedLengthCommand) c;
+			int id = Integer.parseInt(fc.getOperand(1));
+			String filename = fc.getOperand(2);
+			try {
+				FileHandle handle = openFiles.getHandle(id);
+				byte[] data = Utils.getStringFromFile(filename).getBytes(StandardCharsets.ISO_8859_1);
+				handle.write(data, 0, data.length);
+				resultsList.add("Wrote " + data.length + " bytes to " + handle.getName() + ".");
+			} catch (IOException e) {
+				resultsList.add(e.getMessage());
+			} catch (RuntimeException e) {
+				resultsList.add(e.getMessage());
+			}
+			return resultsList; 
+		} 
+		
+	}
+	
+	/**
+	 * Command to move the position of a handle.
+	 */
+	private class SeekHandleProcessor implements CommandActionHandler {
+
+		/**
+		 * Sets the position of the handle, in bytes from the 
+		 * 	beginning of the file.
+		 * @param c command with the number of the handle and the position.
+		 * @return message to display to user.
+		 */
+		@Override
+		public ArrayList<String> execute(Command c) {
+			
+			resultsList = new ArrayList<String>(); 
+			if(dUnit == null) {
+				resultsList.add("No disk is currently mounted.");
+				return resultsList;
 			}
 			
+			FixedLengthCommand fc = (FixedLengthCommand) c;
+			int id = Integer.parseInt(fc.getOperand(1));
+			int pos = Integer.parseInt(fc.getOperand(2));
+			try {
+				openFiles.getHandle(id).seek(pos);
+				resultsList.add("Handle " + id + " is at position " + pos + ".");
+			} catch (RuntimeException e) {
+				resultsList.add(e.getMessage());
+			}
+			return resultsList; 
+		} 
+		
+	}
+	
+	/**
+	 * Command to show the open handles of the mounted disk.
+	 */
+	private class ListOpenFilesProcessor implements CommandActionHandler {
+
+		/**
+		 * Lists every handle with its file and position.
+		 * @param c command without operands.
+		 * @return message to display to user.
+		 */
+		@Override
+		public ArrayList<String> execute(Command c) {
+			
+			resultsList = new ArrayList<String>(); 
+			if(dUnit == null) {
+				resultsList.add("No disk is currently mounted.");
+				return resultsList;
+			}
+			
+			ArrayList<FileHandle> handles = openFiles.getHandles();
+			if(handles.isEmpty())
+				resultsList.add("No files are open.");
+			for(FileHandle handle : handles) {
+				resultsList.add(String.format("%4d %-20s %10d", handle.getId(), 
+						handle.getName(), handle.getPosition()));
+			}
+			return resultsList; 
+		} 
+		
+	}
+	
+	/**
+	 * Command to display the I/O statistics of the mounted disk.
+	 */
+	private class StatsProcessor implements CommandActionHandler {
+
+		/**
+		 * Shows counters and latencies per operation type and the 
+		 * 	operations caused by each command.
+		 * @param c command without operands.
+		 * @return lines with the statistics.
+		 */
+		@Override
+		public ArrayList<String> execute(Command c) {
+			
+			resultsList = new ArrayList<String>(); 
+			if(dUnit == null) {
+				resultsList.add("No disk is currently mounted.");
+				return resultsList;
+			}
+			
+			resultsList.add("I/O statistics of " + dUnit.getDiskName() + ":");
+			resultsList.addAll(dUnit.getStats().snapshot().toLines());
+			return resultsList; 
+		} 
+		
+	}
+	
+	/**
+	 * Command to clear the I/O statistics of the mounted disk.
+	 */
+	private class ResetStatsProcessor implements CommandActionHandler {
+
+		/**
+		 * Resets all counters of the mounted disk.
+		 * @param c command without operands.
+		 * @return message to display to user.
+		 */
+		@Override
+		public ArrayList<String> execute(Command c) {
+			
+			resultsList = new ArrayList<String>(); 
+			if(dUnit == null) {
+				resultsList.add("No disk is currently mounted.");
+				return resultsList;
+			}
 			
+			dUnit.getStats().reset();
+			resultsList.add("Statistics of " + dUnit.getDiskName() + " were reset.");
 			return resultsList; 
 		} 
 		